@@ -4,19 +4,44 @@
 //DEPS com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.17.2
 //DEPS com.fasterxml.jackson.core:jackson-databind:2.17.2
 //SOURCES src/ContextModel.java
+//SOURCES src/ConfigResolver.java
+//SOURCES src/ContextIndex.java
 //SOURCES src/PackModel.java
+//SOURCES src/PackGraph.java
 //SOURCES src/McpCatalog.java
 //SOURCES src/TemplateEngine.java
 //SOURCES src/Generator.java
+//SOURCES src/ModuleLoader.java
+//SOURCES src/DriftChecker.java
+//SOURCES src/RenderCache.java
+//SOURCES src/Frontmatter.java
+//SOURCES src/Validator.java
 //SOURCES src/VersionUtil.java
+//SOURCES src/PathRuleMatcher.java
+//SOURCES src/RepoDetector.java
+//SOURCES src/UnifiedDiff.java
+//SOURCES src/ContentSelector.java
+//SOURCES src/OutputSink.java
+//SOURCES src/AictxEngine.java
+//SOURCES src/McpProbe.java
+//SOURCES src/ContextCache.java
+//SOURCES src/ArchiveDownloader.java
+//SOURCES src/RunReport.java
+//SOURCES src/OutputHistory.java
+//SOURCES src/CompatibilityMatrix.java
+//SOURCES src/ImpactIndex.java
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.HelpCommand;
+import picocli.CommandLine.Parameters;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.Callable;
 
 @Command(name = "aictx",
@@ -28,6 +53,13 @@ import java.util.concurrent.Callable;
                 AictxVersion.class,
                 AictxInit.class,
                 AictxSetup.class,
+                AictxCheck.class,
+                AictxValidate.class,
+                AictxExplain.class,
+                AictxDoctor.class,
+                AictxRollback.class,
+                AictxMatrix.class,
+                AictxImpact.class,
                 AictxFetchContext.class,
                 AictxUpgrade.class,
                 AictxUpdateCheck.class
@@ -45,6 +77,8 @@ public class aictx implements Callable<Integer> {
 
     public static void main(String[] args) {
         int exitCode = new CommandLine(new aictx()).execute(args);
+        // Let a background context library refresh finish so the next run can use it
+        ContextCache.awaitBackground(ContextCache.BACKGROUND_WAIT);
         System.exit(exitCode);
     }
 }
@@ -79,6 +113,12 @@ class AictxInit implements Callable<Integer> {
     @Option(names = {"--force"}, description = "Overwrite existing config")
     boolean force;
 
+    @Option(names = {"--auto"}, description = "Detect repo type, packs and path rules from the repository contents")
+    boolean auto;
+
+    @Option(names = {"--max-depth"}, description = "Directory depth scanned by --auto (default: 4)", defaultValue = "4")
+    int maxDepth;
+
     @Override
     public Integer call() throws Exception {
         Path target = Path.of("aictx-context.yaml");
@@ -87,13 +127,81 @@ class AictxInit implements Callable<Integer> {
             return 1;
         }
 
-        String template = getInitTemplate(repoType);
+        String template;
+        if (auto) {
+            template = getAutoConfig();
+            if (template == null) return 1;
+        } else {
+            template = getInitTemplate(repoType);
+        }
         Files.writeString(target, template);
         System.out.println("Created aictx-context.yaml");
         System.out.println("Next: edit the file to select your pack and options, then run: aictx setup");
         return 0;
     }
 
+    private String getAutoConfig() throws IOException {
+        Path root = Path.of(".").toAbsolutePath().normalize();
+        String detectedType = repoType;
+        if (detectedType == null) {
+            RepoDetector.Detection detection = RepoDetector.detect(root, maxDepth);
+            if (detection.repoType == null) {
+                System.err.println("Could not detect the repo type (no pom.xml, build.gradle or pubspec.yaml within depth " + maxDepth + ").");
+                System.err.println("Use --repo-type to choose one.");
+                return null;
+            }
+            detectedType = detection.repoType;
+            System.out.println("Detected " + detectedType + " from " + String.join(", ", detection.evidence));
+        }
+
+        Path contextRoot = VersionUtil.resolveContextRoot();
+        if (contextRoot == null) {
+            System.err.println("Cannot locate context library.");
+            System.err.println("Try: aictx fetch-context");
+            return null;
+        }
+        ContextModel ctx = RepoDetector.suggestConfig(ContextIndex.of(contextRoot), root, detectedType);
+        if (ctx.packs.isEmpty()) {
+            System.err.println("No pack in the context library applies to repo type " + detectedType + ".");
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("# aictx context configuration (generated by: aictx init --auto)\n");
+        sb.append("schemaVersion: 1\n\n");
+        sb.append("repoType: ").append(ctx.repoType).append("\n\n");
+        appendList(sb, "packs", ctx.packs);
+        appendList(sb, "globals", ctx.globals);
+        appendList(sb, "skills", ctx.skills);
+        if (!ctx.pathRules.isEmpty()) {
+            sb.append("# Path rules whose directories do not exist in this repository\n");
+            sb.append("pathRules:\n");
+            for (String pathRule : ctx.pathRules) {
+                sb.append("  - \"").append(pathRule).append("\"\n");
+            }
+            sb.append("\n");
+        }
+        sb.append("mcp:\n");
+        if (ctx.mcp.toolset != null) {
+            sb.append("  toolset: ").append(ctx.mcp.toolset).append("\n");
+        }
+        sb.append("\n");
+        sb.append("outputs:\n");
+        sb.append("  copilot: true\n");
+        sb.append("  claude: true\n");
+        sb.append("  codex: true\n");
+        sb.append("  vscodeMcp: true\n");
+        return sb.toString();
+    }
+
+    private static void appendList(StringBuilder sb, String key, List<String> values) {
+        sb.append(key).append(":\n");
+        for (String value : values) {
+            sb.append("  - ").append(value).append("\n");
+        }
+        sb.append("\n");
+    }
+
     private String getInitTemplate(String repoType) {
         boolean isJava = "java-service".equals(repoType);
         boolean isFlutter = "flutter-app".equals(repoType);
@@ -183,28 +291,49 @@ class AictxSetup implements Callable<Integer> {
     @Option(names = {"--verbose"}, description = "Print detailed output")
     boolean verbose;
 
+    @Option(names = {"--all-modules"}, description = "Generate for every aictx-context.yaml under the current directory")
+    boolean allModules;
+
+    @Option(names = {"--no-render-cache"}, description = "Always render from scratch instead of using ~/.aictx/render-cache")
+    boolean noRenderCache;
+
+    @Option(names = {"--summary"}, description = "With --dry-run, list changed files with line counts instead of diffs")
+    boolean summary;
+
+    @Option(names = {"--archive"}, description = "Write outputs into a .zip or .tar file instead of the repository")
+    Path archive;
+
+    @Option(names = {"--report"}, description = "Write a JSON report of the run (files, warnings, durations) to this file")
+    Path reportFile;
+
+    @Option(names = {"--metrics"}, description = "Write Prometheus textfile metrics of the run to this file")
+    Path metricsFile;
+
+    @Option(names = {"--no-history"}, description = "Do not keep replaced files in .aictx/history for aictx rollback")
+    boolean noHistory;
+
     @Override
     public Integer call() throws Exception {
-        Path config = Path.of(configPath);
-        if (!Files.exists(config)) {
-            System.err.println("Config not found: " + configPath);
-            System.err.println("Run 'aictx init' first to create a config file.");
-            return 1;
-        }
-
-        ContextModel ctx;
+        RunReport report = new RunReport("setup").withDryRun(dryRun);
+        int exitCode = 1;
         try {
-            ctx = ContextModel.load(config);
+            exitCode = run(report);
         } catch (Exception e) {
-            System.err.println("Failed to parse config: " + e.getMessage());
-            return 1;
+            report.failed(e);
+            throw e;
+        } finally {
+            // Also written when the run fails, so CI sees the failure in its report
+            if (reportFile != null || metricsFile != null) {
+                report.finish(exitCode);
+                if (!report.write(reportFile, metricsFile) && exitCode == 0) exitCode = 1;
+            }
         }
+        return exitCode;
+    }
 
-        if (ctx.schemaVersion > aictx.SCHEMA_VERSION) {
-            System.err.println("Config schema version " + ctx.schemaVersion + " is newer than supported (" + aictx.SCHEMA_VERSION + ").");
-            System.err.println("Run 'aictx upgrade' to get the latest CLI.");
-            return 1;
-        }
+    private int run(RunReport report) throws Exception {
+        List<Path> configs = ModuleLoader.findConfigs(allModules, configPath);
+        if (configs.isEmpty()) return 1;
 
         Path contextRoot = VersionUtil.resolveContextRoot();
         if (contextRoot == null) {
@@ -212,20 +341,575 @@ class AictxSetup implements Callable<Integer> {
             System.err.println("Try: aictx fetch-context");
             return 1;
         }
+        report.contextLibrary(contextRoot);
 
-        Generator gen = new Generator(ctx, contextRoot, dryRun, force, verbose);
-        gen.generate();
+        ModuleLoader loader = new ModuleLoader(contextRoot);
+        RenderCache renderCache = RenderCache.defaultCache();
+        OutputSink.Archive archiveSink = null;
+        OutputStream archiveOut = null;
+        if (archive != null && !dryRun) {
+            archiveOut = new BufferedOutputStream(Files.newOutputStream(archive));
+            archiveSink = new OutputSink.Archive(archiveOut, OutputSink.Archive.formatFor(archive.getFileName().toString()));
+        }
+        int exitCode = 0;
+        List<ImpactIndex.Record> impact = new ArrayList<>();
+        for (Path config : configs) {
+            long moduleStart = System.nanoTime();
+            Path moduleDir = ModuleLoader.moduleDir(config, allModules);
+            if (allModules) {
+                System.out.println("\nModule: " + moduleDir.normalize());
+            }
+            ContextModel ctx = loader.load(config);
+            if (ctx == null) {
+                report.failedModule(moduleDir, "cannot load " + config, moduleStart);
+                exitCode = 1;
+                continue;
+            }
 
-        if (!dryRun) {
-            System.out.println("\nSetup complete. Generated files:");
-        } else {
-            System.out.println("\nDry run complete. Would generate:");
+            ContextIndex index = loader.indexFor(ctx);
+            Generator gen = new Generator(ctx, index, moduleDir, dryRun, force, verbose);
+            if (!noRenderCache) gen.withRenderCache(renderCache);
+            gen.withDiffSummary(summary);
+            if (archiveSink != null) {
+                // Archive entries keep the module's location relative to the current directory
+                String prefix = allModules ? Path.of(".").relativize(moduleDir).normalize().toString().replace('\\', '/') : "";
+                OutputSink.Archive sink = archiveSink;
+                gen.generate((path, content) -> sink.write(prefix.isEmpty() ? path : prefix + "/" + path, content));
+            } else {
+                OutputHistory history = dryRun || noHistory ? null : OutputHistory.of(moduleDir);
+                gen.withHistory(history);
+                String generation = null;
+                try {
+                    gen.generate();
+                } finally {
+                    // Publish what was replaced even if a later write failed, so rollback can undo a partial run
+                    if (history != null) generation = history.commit();
+                }
+                if (generation != null && verbose) {
+                    System.out.println("  Previous versions kept in " + OutputHistory.HISTORY_DIR + "/" + generation);
+                }
+            }
+            report.module(moduleDir, ctx, index, gen, moduleStart);
+            if (!dryRun) impact.add(ImpactIndex.record(config, moduleDir, index, gen));
+
+            if (!dryRun) {
+                System.out.println("\nSetup complete. Generated files:");
+            } else {
+                System.out.println("\nDry run complete. Would change:");
+            }
+            gen.printSummary();
+            if (!gen.getSelection().isEmpty()) {
+                System.out.println("\nSelected skills and globals (threshold " + ctx.selection.threshold + "):");
+                gen.getSelection().forEach(choice -> System.out.println("  " + choice));
+            }
+            if (ctx.outputs.stableLayout()) {
+                System.out.println("\nStable prefixes (shared by repos with the same org content):");
+                gen.stablePrefixes().forEach((path, prefix) -> System.out.printf("  %-50s %8d bytes  sha256:%s%n",
+                        path, prefix.bytes, prefix.sha256.substring(0, 16)));
+            }
+        }
+
+        ImpactIndex.save(impact);
+
+        if (archiveSink != null) {
+            archiveSink.close();
+            archiveOut.close();
+            System.out.println("\nWrote archive: " + archive);
         }
-        gen.printSummary();
 
         System.out.println("\nNext steps:");
         System.out.println("  - Review generated files and commit them");
         System.out.println("  - Authenticate MCP servers in VS Code / Claude / Codex if prompted");
+        return exitCode;
+    }
+}
+
+// ── check ────────────────────────────────────────────────────────────────────
+
+@Command(name = "check", description = "Verify generated files are up to date without writing anything (for CI)")
+class AictxCheck implements Callable<Integer> {
+
+    @Option(names = {"--config"}, description = "Path to config file", defaultValue = "aictx-context.yaml")
+    String configPath;
+
+    @Option(names = {"--all-modules"}, description = "Check every aictx-context.yaml under the current directory")
+    boolean allModules;
+
+    @Option(names = {"--format"}, description = "Output format: text, json", defaultValue = "text")
+    String format;
+
+    @Option(names = {"--record-impact"}, description = "Record the checked configs in the impact index (~/.aictx/impact.json) for aictx impact")
+    boolean recordImpact;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> configs = ModuleLoader.findConfigs(allModules, configPath);
+        if (configs.isEmpty()) return 2;
+
+        Path contextRoot = VersionUtil.resolveContextRoot();
+        if (contextRoot == null) {
+            System.err.println("Cannot locate context library.");
+            System.err.println("Try: aictx fetch-context");
+            return 2;
+        }
+
+        ModuleLoader loader = new ModuleLoader(contextRoot);
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<ImpactIndex.Record> impact = new ArrayList<>();
+        boolean drift = false;
+        for (Path config : configs) {
+            Path moduleDir = ModuleLoader.moduleDir(config, allModules);
+            ContextModel ctx = loader.load(config);
+            if (ctx == null) return 2;
+
+            String module = moduleDir.normalize().toString().isEmpty() ? "." : moduleDir.normalize().toString();
+            ContextIndex index = loader.indexFor(ctx);
+            Generator gen = new Generator(ctx, index, moduleDir, true, false, false);
+            for (DriftChecker.Entry entry : DriftChecker.check(moduleDir, gen.render())) {
+                drift |= entry.isDrift();
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("module", module);
+                result.put("path", entry.path);
+                result.put("status", entry.status.name().toLowerCase(Locale.ROOT));
+                results.add(result);
+            }
+            // Writes nothing unless asked to, so check stays read-only in CI
+            if (recordImpact) impact.add(ImpactIndex.record(config, moduleDir, index, gen));
+        }
+        ImpactIndex.save(impact);
+
+        if ("json".equals(format)) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("drift", drift);
+            report.put("files", results);
+            System.out.println(new ObjectMapper()
+                    .writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        } else {
+            for (Map<String, Object> result : results) {
+                if (!"up_to_date".equals(result.get("status"))) {
+                    Path file = Path.of((String) result.get("module")).resolve((String) result.get("path")).normalize();
+                    System.out.println("  " + result.get("status") + ": " + file);
+                }
+            }
+            System.out.println(drift ? "Generated files are out of date. Run: aictx setup" : "Generated files are up to date.");
+        }
+        return drift ? 1 : 0;
+    }
+}
+
+// ── validate ─────────────────────────────────────────────────────────────────
+
+@Command(name = "validate", description = "Check the context library and configs for broken references and malformed files")
+class AictxValidate implements Callable<Integer> {
+
+    @Parameters(description = "Config files or directories to scan for aictx-context.yaml", arity = "0..*")
+    List<Path> configs = new ArrayList<>();
+
+    @Option(names = {"--library"}, description = "Validate the context library (default when no configs are given)")
+    boolean library;
+
+    @Option(names = {"--format"}, description = "Output format: text, json", defaultValue = "text")
+    String format;
+
+    @Override
+    public Integer call() throws Exception {
+        Path contextRoot = VersionUtil.resolveContextRoot();
+        if (contextRoot == null) {
+            System.err.println("Cannot locate context library.");
+            System.err.println("Try: aictx fetch-context");
+            return 2;
+        }
+
+        List<Path> configFiles = new ArrayList<>();
+        for (Path path : configs) {
+            if (Files.isDirectory(path)) {
+                configFiles.addAll(ConfigResolver.discoverModules(path));
+            } else {
+                configFiles.add(path);
+            }
+        }
+
+        // Configs are grouped by their context layers so each group shares one index
+        ModuleLoader loader = new ModuleLoader(contextRoot);
+        Map<ContextIndex, Validator> validators = new LinkedHashMap<>();
+        ContextIndex baseIndex = loader.indexFor(new ContextModel().withDefaults());
+        if (library || configFiles.isEmpty()) {
+            validators.put(baseIndex, new Validator(baseIndex).library());
+        }
+
+        List<Validator.Diagnostic> diagnostics = new ArrayList<>();
+        ConfigResolver resolver = new ConfigResolver();
+        for (Path config : configFiles) {
+            ContextModel ctx;
+            try {
+                ctx = resolver.resolve(config);
+            } catch (Exception e) {
+                diagnostics.add(new Validator.Diagnostic(Validator.Severity.ERROR, config.toString(), "parse", e.getMessage()));
+                continue;
+            }
+            ContextIndex index = loader.indexFor(ctx);
+            validators.computeIfAbsent(index, Validator::new).config(config.toString(), ctx);
+        }
+        for (Validator validator : validators.values()) {
+            diagnostics.addAll(validator.run());
+        }
+
+        long errors = diagnostics.stream().filter(d -> d.severity == Validator.Severity.ERROR).count();
+        long warnings = diagnostics.size() - errors;
+        if ("json".equals(format)) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("errors", errors);
+            report.put("warnings", warnings);
+            report.put("diagnostics", diagnostics);
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        } else {
+            diagnostics.forEach(d -> System.out.println("  " + d));
+            System.out.println(errors + " error(s), " + warnings + " warning(s)");
+        }
+        return errors > 0 ? 1 : 0;
+    }
+}
+
+// ── explain ──────────────────────────────────────────────────────────────────
+
+@Command(name = "explain", description = "Show which pack path rules (applyTo globs) apply to files in this repository")
+class AictxExplain implements Callable<Integer> {
+
+    @Parameters(description = "Repository-relative paths to explain", arity = "0..*")
+    List<String> paths = new ArrayList<>();
+
+    @Option(names = {"--config"}, description = "Path to config file", defaultValue = "aictx-context.yaml")
+    String configPath;
+
+    @Option(names = {"--tree"}, description = "Walk the repository and summarize which files each rule covers")
+    boolean tree;
+
+    @Option(names = {"--list"}, description = "With --tree, print every matched file and its rules")
+    boolean list;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> configs = ModuleLoader.findConfigs(false, configPath);
+        if (configs.isEmpty()) return 1;
+
+        Path contextRoot = VersionUtil.resolveContextRoot();
+        if (contextRoot == null) {
+            System.err.println("Cannot locate context library.");
+            System.err.println("Try: aictx fetch-context");
+            return 1;
+        }
+
+        ModuleLoader loader = new ModuleLoader(contextRoot);
+        ContextModel ctx = loader.load(configs.get(0));
+        if (ctx == null) return 1;
+        PathRuleMatcher matcher = PathRuleMatcher.load(loader.indexFor(ctx), ctx);
+        if (matcher.rules().isEmpty()) {
+            System.out.println("No path rules are selected by this config.");
+            return 0;
+        }
+
+        for (String path : paths) {
+            List<PathRuleMatcher.Match> matches = matcher.match(path);
+            System.out.println(path + (matches.isEmpty() ? ": no path rules apply" : ":"));
+            for (PathRuleMatcher.Match match : matches) {
+                System.out.println("  " + match.rule.id + " (" + match.rule.source + ") via " + match.glob);
+            }
+        }
+
+        if (tree || paths.isEmpty()) {
+            Path repoRoot = configs.get(0).toAbsolutePath().getParent();
+            Map<String, Long> counts = new LinkedHashMap<>();
+            matcher.rules().forEach(rule -> counts.put(rule.id, 0L));
+            long start = System.nanoTime();
+            matcher.walk(repoRoot, (file, matches) -> {
+                Set<String> ruleIds = new LinkedHashSet<>();
+                matches.forEach(m -> ruleIds.add(m.rule.id));
+                ruleIds.forEach(id -> counts.merge(id, 1L, Long::sum));
+                if (list) System.out.println("  " + file + "  " + ruleIds);
+            });
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("Path rule coverage (" + millis + " ms):");
+            for (PathRuleMatcher.Rule rule : matcher.rules()) {
+                System.out.println("  " + rule.id + ": " + counts.get(rule.id) + " file(s)  [" + String.join(", ", rule.globs) + "]");
+            }
+        }
+        return 0;
+    }
+}
+
+// ── doctor ───────────────────────────────────────────────────────────────────
+
+@Command(name = "doctor", description = "Check that configured MCP servers are resolved and answer an initialize handshake")
+class AictxDoctor implements Callable<Integer> {
+
+    @Option(names = {"--config"}, description = "Path to config file", defaultValue = "aictx-context.yaml")
+    String configPath;
+
+    @Option(names = {"--timeout"}, description = "Per-server handshake timeout in milliseconds (default: 5000)", defaultValue = "5000")
+    long timeoutMillis;
+
+    @Option(names = {"--format"}, description = "Output format: text, json", defaultValue = "text")
+    String format;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> configs = ModuleLoader.findConfigs(false, configPath);
+        if (configs.isEmpty()) return 2;
+
+        Path contextRoot = VersionUtil.resolveContextRoot();
+        if (contextRoot == null) {
+            System.err.println("Cannot locate context library.");
+            System.err.println("Try: aictx fetch-context");
+            return 2;
+        }
+
+        ModuleLoader loader = new ModuleLoader(contextRoot);
+        ContextModel ctx = loader.load(configs.get(0));
+        if (ctx == null) return 2;
+        ContextIndex index = loader.indexFor(ctx);
+        Generator gen = new Generator(ctx, index, Path.of("."), true, false, false);
+        McpCatalog catalog = gen.mcpCatalog();
+
+        List<McpCatalog.McpServer> servers = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String name : gen.mcpServerNames()) {
+            McpCatalog.McpServer server = catalog.findServer(name);
+            if (server != null) {
+                servers.add(server);
+            } else {
+                unknown.add(name);
+            }
+        }
+
+        List<McpProbe.Result> results = new McpProbe(Duration.ofMillis(timeoutMillis), System.getenv()).probeAll(servers);
+        boolean healthy = unknown.isEmpty() && results.stream().allMatch(McpProbe.Result::isHealthy);
+
+        if ("json".equals(format)) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("healthy", healthy);
+            report.put("servers", results);
+            report.put("unknownServers", unknown);
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        } else {
+            for (McpProbe.Result result : results) {
+                String latency = result.latencyMillis > 0 || result.status == McpProbe.Status.OK ? result.latencyMillis + " ms" : "-";
+                System.out.printf("  %-14s %-20s %-6s %8s  %s%n", result.status, result.name, result.type, latency, result.detail);
+            }
+            for (String name : unknown) {
+                System.out.printf("  %-14s %-20s not in the MCP catalog%n", "UNKNOWN", name);
+            }
+            System.out.println(healthy ? "All MCP servers are reachable." : "Some MCP servers need attention.");
+        }
+        return healthy ? 0 : 1;
+    }
+}
+
+// ── rollback ─────────────────────────────────────────────────────────────────
+
+@Command(name = "rollback", description = "Restore the files replaced by the last setup run from .aictx/history")
+class AictxRollback implements Callable<Integer> {
+
+    @Option(names = {"--all-modules"}, description = "Roll back every module with an aictx-context.yaml under the current directory")
+    boolean allModules;
+
+    @Option(names = {"--steps"}, description = "Number of setup runs to undo", defaultValue = "1")
+    int steps;
+
+    @Option(names = {"--list"}, description = "List the stored generations instead of restoring")
+    boolean list;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> moduleDirs = new ArrayList<>();
+        if (allModules) {
+            for (Path config : ModuleLoader.findConfigs(true, null)) {
+                moduleDirs.add(ModuleLoader.moduleDir(config, true));
+            }
+        } else {
+            moduleDirs.add(Path.of("."));
+        }
+
+        int exitCode = 0;
+        for (Path moduleDir : moduleDirs) {
+            if (allModules) {
+                System.out.println("\nModule: " + moduleDir.normalize());
+            }
+            OutputHistory history = OutputHistory.of(moduleDir);
+            if (list) {
+                List<OutputHistory.Generation> generations = history.generations();
+                if (generations.isEmpty()) System.out.println("  No history in " + OutputHistory.HISTORY_DIR);
+                for (OutputHistory.Generation generation : generations) {
+                    System.out.printf("  %-32s %s  %d file(s)%n", generation.id, generation.createdAt, generation.files.size());
+                }
+                continue;
+            }
+
+            for (int i = 0; i < steps; i++) {
+                OutputHistory.Generation restored = history.rollback();
+                if (restored == null) {
+                    System.err.println("  Nothing to roll back in " + moduleDir.resolve(OutputHistory.HISTORY_DIR).normalize());
+                    if (i == 0) exitCode = 1;
+                    break;
+                }
+                System.out.println("  Rolled back setup run " + restored.id + " (" + restored.createdAt + "):");
+                for (OutputHistory.Entry entry : restored.files) {
+                    System.out.println("    " + (entry.storage == OutputHistory.Storage.ABSENT ? "removed   " : "restored  ") + entry.path);
+                }
+            }
+        }
+        return exitCode;
+    }
+}
+
+// ── matrix ───────────────────────────────────────────────────────────────────
+
+@Command(name = "matrix", description = "Render configs against several context library versions and compare the outputs")
+class AictxMatrix implements Callable<Integer> {
+
+    @Parameters(description = "Config files or directories to scan for aictx-context.yaml (default: current directory)", arity = "0..*")
+    List<Path> configs = new ArrayList<>();
+
+    @Option(names = {"--library", "-l"}, description = "Library version: directory, .zip archive, 'cached' or a release tag; repeatable, the first is the baseline", required = true)
+    List<String> libraries = new ArrayList<>();
+
+    @Option(names = {"--parallelism"}, description = "Renders running at the same time (default: number of CPUs)")
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"--format"}, description = "Output format: text, json", defaultValue = "text")
+    String format;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Path> configFiles = new ArrayList<>();
+        for (Path path : configs.isEmpty() ? List.of(Path.of(".")) : configs) {
+            if (Files.isDirectory(path)) {
+                configFiles.addAll(ConfigResolver.discoverModules(path));
+            } else {
+                configFiles.add(path);
+            }
+        }
+        if (configFiles.isEmpty()) {
+            System.err.println("No " + ConfigResolver.CONFIG_FILE + " found.");
+            return 2;
+        }
+
+        try (CompatibilityMatrix matrix = new CompatibilityMatrix()) {
+            for (String spec : libraries) {
+                try {
+                    matrix.addLibrary(spec);
+                } catch (IOException e) {
+                    System.err.println("Cannot load library " + spec + ": " + e.getMessage());
+                    return 2;
+                }
+            }
+            List<CompatibilityMatrix.Cell> cells = matrix.run(configFiles, parallelism);
+            boolean failed = cells.stream().anyMatch(cell -> !cell.success);
+
+            if ("json".equals(format)) {
+                List<Map<String, Object>> libs = new ArrayList<>();
+                for (CompatibilityMatrix.Library library : matrix.libraries()) {
+                    Map<String, Object> lib = new LinkedHashMap<>();
+                    lib.put("spec", library.spec);
+                    lib.put("path", library.root.toString());
+                    libs.add(lib);
+                }
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("baseline", libraries.get(0));
+                report.put("libraries", libs);
+                report.put("results", cells);
+                System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report));
+            } else {
+                String config = null;
+                for (CompatibilityMatrix.Cell cell : cells) {
+                    if (!cell.config.equals(config)) {
+                        config = cell.config;
+                        System.out.println(config);
+                    }
+                    if (!cell.success) {
+                        System.out.printf("  %-20s FAILED  %s%n", cell.library, String.join("; ", cell.errors));
+                        continue;
+                    }
+                    String change = cell.library.equals(libraries.get(0)) ? "baseline"
+                            : cell.changedFiles.isEmpty() ? "unchanged"
+                            : String.format("%+d B, %+d tokens, %d file(s) changed: %s", cell.bytesDelta, cell.tokensDelta,
+                                    cell.changedFiles.size(), String.join(", ", cell.changedFiles));
+                    System.out.printf("  %-20s %s  %2d files %8d B %7d tokens  %s%n", cell.library, cell.digest.substring(0, 12),
+                            cell.files, cell.bytes, cell.tokens, change);
+                    for (String warning : cell.warnings) {
+                        System.out.println("  " + " ".repeat(20) + " warning: " + warning);
+                    }
+                }
+                long changed = cells.stream().filter(cell -> !cell.changedFiles.isEmpty()).map(cell -> cell.config).distinct().count();
+                System.out.println(configFiles.size() + " config(s) x " + libraries.size() + " library version(s): "
+                        + changed + " config(s) with changed outputs" + (failed ? ", some renders failed" : ""));
+            }
+            return failed ? 1 : 0;
+        }
+    }
+}
+
+// ── impact ───────────────────────────────────────────────────────────────────
+
+@Command(name = "impact", description = "List the repositories whose outputs depend on changed context library files")
+class AictxImpact implements Callable<Integer> {
+
+    @Parameters(description = "Changed library files or directories, e.g. globals/security.md ('-' reads them from stdin)", arity = "1..*")
+    List<String> changedFiles = new ArrayList<>();
+
+    @Option(names = {"--format"}, description = "Output format: text, json", defaultValue = "text")
+    String format;
+
+    @Override
+    public Integer call() throws Exception {
+        ImpactIndex index = ImpactIndex.defaultIndex();
+        if (!index.exists()) {
+            System.err.println("No impact index at " + index.file() + ". It is filled by aictx setup and aictx check --record-impact.");
+            return 2;
+        }
+
+        List<String> changes = new ArrayList<>();
+        for (String changed : changedFiles) {
+            if ("-".equals(changed)) {
+                new BufferedReader(new InputStreamReader(System.in)).lines()
+                        .map(String::trim).filter(line -> !line.isEmpty()).forEach(changes::add);
+            } else {
+                changes.add(changed);
+            }
+        }
+
+        ImpactIndex.Impact impact = index.affected(changes);
+        List<ImpactIndex.Match> matches = new ArrayList<>();
+        int missing = 0;
+        for (ImpactIndex.Match match : impact.affected) {
+            // Configs moved or deleted since they were recorded
+            if (Files.exists(Path.of(match.entry.config))) {
+                matches.add(match);
+            } else {
+                missing++;
+            }
+        }
+
+        if ("json".equals(format)) {
+            List<Map<String, Object>> affected = new ArrayList<>();
+            for (ImpactIndex.Match match : matches) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("module", match.entry.module);
+                entry.put("config", match.entry.config);
+                entry.put("changes", match.changes);
+                entry.put("recordedAt", match.entry.recordedAt);
+                affected.add(entry);
+            }
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("index", index.file().toString());
+            report.put("affected", affected);
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        } else {
+            // One module per line, for xargs and shell loops; details go to stderr
+            matches.stream().map(match -> match.entry.module).distinct().forEach(System.out::println);
+            System.err.println(matches.size() + " of " + impact.recorded + " recorded config(s) affected"
+                    + (missing > 0 ? " (" + missing + " no longer exist)" : ""));
+        }
         return 0;
     }
 }
@@ -235,16 +919,46 @@ class AictxSetup implements Callable<Integer> {
 @Command(name = "fetch-context", description = "Download or update the context library from GitHub")
 class AictxFetchContext implements Callable<Integer> {
 
+    @Option(names = {"--report"}, description = "Write a JSON report of the download to this file")
+    Path reportFile;
+
+    @Option(names = {"--metrics"}, description = "Write Prometheus textfile metrics of the download to this file")
+    Path metricsFile;
+
     @Override
     public Integer call() throws Exception {
-        java.nio.file.Path targetDir = VersionUtil.getContextCacheDir();
-        System.out.println("Downloading context library from GitHub...");
+        RunReport report = new RunReport("fetch-context");
+        int exitCode = 1;
+        try {
+            exitCode = run(report);
+        } catch (Exception e) {
+            report.failed(e);
+            throw e;
+        } finally {
+            // Also written when the run fails, so CI sees the failure in its report
+            if (reportFile != null || metricsFile != null) {
+                report.finish(exitCode);
+                if (!report.write(reportFile, metricsFile) && exitCode == 0) exitCode = 1;
+            }
+        }
+        return exitCode;
+    }
+
+    private int run(RunReport report) {
+        ContextCache cache = ContextCache.fromEnvironment();
+        if (cache.isOffline()) {
+            System.err.println("Offline mode (AICTX_OFFLINE) is set; not downloading.");
+            return 1;
+        }
+        System.out.println("Downloading context library from " + cache.url() + " ...");
         try {
-            VersionUtil.downloadContext(targetDir);
-            System.out.println("Context library cached at " + targetDir);
+            report.download(cache.url(), cache.refresh());
+            report.contextLibrary(cache.current());
+            System.out.println("Context library cached at " + cache.current());
             return 0;
         } catch (Exception e) {
             System.err.println("Failed to download context library: " + e.getMessage());
+            report.failed(e);
             return 1;
         }
     }
@@ -286,7 +1000,7 @@ class AictxUpgrade implements Callable<Integer> {
                 System.out.println("Upgraded to " + latestTag);
                 // Also refresh the context library
                 System.out.println("Updating context library...");
-                VersionUtil.downloadContext(VersionUtil.getContextCacheDir());
+                ContextCache.fromEnvironment().refresh();
                 System.out.println("Context library updated.");
             } else {
                 System.err.println("Upgrade failed (exit code " + exitCode + ")");
@@ -0,0 +1,110 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+//JAVA 17+
+//DEPS com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.17.2
+//DEPS com.fasterxml.jackson.core:jackson-databind:2.17.2
+//SOURCES ../src/McpCatalog.java
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compares McpCatalog.load (whole catalog) with McpCatalog.loadSelected (one toolset and its
+ * servers) on generated catalogs, with servers listed first (as in the bundled catalog) and
+ * with toolsets first: median time and bytes allocated per load, and whether both loaders
+ * resolve the same servers. Run: jbang tools/aictx/checks/CatalogBench.java [servers] [runs]
+ */
+public class CatalogBench {
+
+    static final int TOOLSETS = 50;
+    static final int SERVERS_PER_TOOLSET = 5;
+
+    public static void main(String[] args) throws Exception {
+        int servers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        for (boolean toolsetsFirst : new boolean[]{false, true}) {
+            Path catalog = Files.createTempFile("aictx-catalog-", ".yaml");
+            try {
+                generate(catalog, servers, toolsetsFirst);
+                String toolset = "toolset-" + (TOOLSETS - 1);
+                System.out.printf("%s first: %d servers, %d toolsets, %.1f MB; median of %d runs after %d warm-up runs%n",
+                        toolsetsFirst ? "toolsets" : "servers", servers, TOOLSETS, Files.size(catalog) / 1e6, runs, runs);
+
+                List<String> full = McpCatalog.load(catalog).resolveServerNames(toolset, List.of());
+                List<String> selected = McpCatalog.loadSelected(List.of(catalog), toolset, List.of())
+                        .resolveServerNames(toolset, List.of());
+                if (!full.equals(selected)) {
+                    System.out.println("FAIL  loaders disagree: " + full + " vs " + selected);
+                    System.exit(1);
+                }
+
+                Measure whole = measure(runs, () -> McpCatalog.load(catalog).resolveServerNames(toolset, List.of()));
+                Measure streamed = measure(runs, () -> McpCatalog.loadSelected(List.of(catalog), toolset, List.of())
+                        .resolveServerNames(toolset, List.of()));
+                System.out.printf("  load          %8.1f ms  %8.1f MB allocated%n", whole.millis, whole.megabytes);
+                System.out.printf("  loadSelected  %8.1f ms  %8.1f MB allocated%n", streamed.millis, streamed.megabytes);
+            } finally {
+                Files.deleteIfExists(catalog);
+            }
+        }
+    }
+
+    interface Load {
+        Object run() throws IOException;
+    }
+
+    static final class Measure {
+        final double millis;
+        final double megabytes;
+
+        Measure(double millis, double megabytes) {
+            this.millis = millis;
+            this.megabytes = megabytes;
+        }
+    }
+
+    /** Median wall time and allocation of runs loads, after as many warm-up loads. */
+    static Measure measure(int runs, Load load) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < runs; i++) load.run();
+        long[] nanos = new long[runs];
+        long[] bytes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            load.run();
+            nanos[i] = System.nanoTime() - start;
+            bytes[i] = threads.getThreadAllocatedBytes(thread) - allocated;
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        return new Measure(nanos[runs / 2] / 1e6, bytes[runs / 2] / 1e6);
+    }
+
+    static void generate(Path file, int servers, boolean toolsetsFirst) throws IOException {
+        StringBuilder serverSection = new StringBuilder("servers:\n");
+        for (int i = 0; i < servers; i++) {
+            serverSection.append("  - name: server-").append(i).append("\n")
+                    .append("    description: Generated server ").append(i).append(" with a description of typical length\n")
+                    .append("    url: \"https://mcp.example.com/servers/").append(i).append("\"\n")
+                    .append("    whenToUse: When the task needs the tools of generated server ").append(i).append("\n")
+                    .append("    type: remote\n\n");
+        }
+        StringBuilder toolsetSection = new StringBuilder("toolsets:\n");
+        for (int t = 0; t < TOOLSETS; t++) {
+            toolsetSection.append("  - name: toolset-").append(t).append("\n")
+                    .append("    description: Generated toolset ").append(t).append("\n")
+                    .append("    recommendedForRepoTypes: [java-service]\n")
+                    .append("    servers:\n");
+            for (int s = 0; s < SERVERS_PER_TOOLSET; s++) {
+                toolsetSection.append("      - server-").append((t * 37 + s * 401) % servers).append("\n");
+            }
+        }
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write(toolsetsFirst ? toolsetSection + "\n" + serverSection : serverSection + "\n" + toolsetSection);
+        }
+    }
+}
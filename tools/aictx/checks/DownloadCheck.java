@@ -0,0 +1,132 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+//JAVA 17+
+//DEPS com.fasterxml.jackson.core:jackson-databind:2.17.2
+//SOURCES ../src/ArchiveDownloader.java
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads an archive with ArchiveDownloader from local stand-in servers and checks the spool.
+ *
+ * Servers: one honouring Range with a strong ETag, one ignoring Range, one sending only a weak
+ * ETag (If-Range must not be used with it), one with a weak ETag and Last-Modified, and one
+ * failing the first attempt of a chunk. Run: jbang tools/aictx/checks/DownloadCheck.java
+ */
+public class DownloadCheck {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final String LAST_MODIFIED = "Tue, 13 Oct 2026 08:00:00 GMT";
+
+    /** How a stand-in server treats requests. */
+    private static final class Server {
+        final String name;
+        final boolean ranges;
+        final String etag;
+        final String lastModified;
+        final boolean failOnce;
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        Server(String name, boolean ranges, String etag, String lastModified, boolean failOnce) {
+            this.name = name;
+            this.ranges = ranges;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.failOnce = failOnce;
+        }
+
+        void handle(HttpExchange exchange, byte[] archive) throws IOException {
+            requests.incrementAndGet();
+            if (etag != null) exchange.getResponseHeaders().add("ETag", etag);
+            if (lastModified != null) exchange.getResponseHeaders().add("Last-Modified", lastModified);
+
+            Matcher range = RANGE.matcher(Objects.toString(exchange.getRequestHeaders().getFirst("Range"), ""));
+            if (!ranges || !range.matches() || !ifRangeMatches(exchange.getRequestHeaders().getFirst("If-Range"))) {
+                send(exchange, 200, archive, 0, archive.length);
+                return;
+            }
+            int start = Integer.parseInt(range.group(1));
+            int end = Math.min(Integer.parseInt(range.group(2)), archive.length - 1);
+            if (failOnce && start > 0 && failures.getAndIncrement() == 0) {
+                send(exchange, 503, new byte[0], 0, 0);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + archive.length);
+            send(exchange, 206, archive, start, end - start + 1);
+        }
+
+        /** RFC 9110 13.1.5: only a strong ETag or the Last-Modified date can match. */
+        private boolean ifRangeMatches(String ifRange) {
+            if (ifRange == null) return true;
+            if (ifRange.startsWith("W/")) return false;
+            if (ifRange.startsWith("\"")) return ifRange.equals(etag) && !etag.startsWith("W/");
+            return ifRange.equals(lastModified);
+        }
+
+        private static void send(HttpExchange exchange, int code, byte[] body, int offset, int length) throws IOException {
+            exchange.sendResponseHeaders(code, length == 0 ? -1 : length);
+            if (length > 0) exchange.getResponseBody().write(body, offset, length);
+            exchange.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] archive = new byte[3 * ArchiveDownloader.CHUNK_SIZE + 12345];
+        new Random(7).nextBytes(archive);
+        List<Server> servers = List.of(
+                new Server("ranges, strong ETag", true, "\"v1\"", null, false),
+                new Server("ranges ignored", false, "\"v1\"", null, false),
+                new Server("ranges, weak ETag only", true, "W/\"v1\"", null, false),
+                new Server("ranges, weak ETag and Last-Modified", true, "W/\"v1\"", LAST_MODIFIED, false),
+                new Server("ranges, a chunk fails once", true, "\"v1\"", null, true));
+        boolean[] expectRanged = {true, false, false, true, true};
+
+        HttpServer http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            http.createContext("/" + i + ".zip", exchange -> server.handle(exchange, archive));
+        }
+        http.start();
+        Path dir = Files.createTempDirectory("aictx-download-check");
+        int failed = 0;
+        try {
+            for (int i = 0; i < servers.size(); i++) {
+                Server server = servers.get(i);
+                URI uri = URI.create("http://127.0.0.1:" + http.getAddress().getPort() + "/" + i + ".zip");
+                ArchiveDownloader downloader = new ArchiveDownloader(uri, dir.resolve(i + ".download"));
+                String problem;
+                try {
+                    ArchiveDownloader.Result result = downloader.download(Map.of());
+                    if (!Arrays.equals(Files.readAllBytes(downloader.spool()), archive)) {
+                        problem = "spool differs from the archive";
+                    } else if (result.ranged != expectRanged[i]) {
+                        problem = "ranged=" + result.ranged + ", expected " + expectRanged[i];
+                    } else {
+                        problem = null;
+                    }
+                } catch (IOException e) {
+                    problem = e.getMessage();
+                } finally {
+                    downloader.discard();
+                }
+                System.out.println((problem == null ? "ok    " : "FAIL  ") + server.name + " ("
+                        + server.requests.get() + " requests)" + (problem == null ? "" : ": " + problem));
+                if (problem != null) failed++;
+            }
+        } finally {
+            http.stop(0);
+            Files.deleteIfExists(dir);
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
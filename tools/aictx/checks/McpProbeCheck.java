@@ -0,0 +1,152 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+//JAVA 17+
+//DEPS info.picocli:picocli:4.7.6
+//DEPS com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.17.2
+//DEPS com.fasterxml.jackson.core:jackson-databind:2.17.2
+//SOURCES ../aictx.java
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Probes local stand-in MCP servers with McpProbe and checks the status and that every probe
+ * returns within its timeout.
+ *
+ * Servers: one answering with JSON, one answering over SSE and keeping the stream open, one
+ * sending a notification before the SSE response, one requiring sign-in, one never sending
+ * headers and one opening an SSE stream without ever answering.
+ * Run: jbang tools/aictx/checks/McpProbeCheck.java
+ */
+public class McpProbeCheck {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(1500);
+    private static final String RESPONSE = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"protocolVersion\":\""
+            + McpProbe.PROTOCOL_VERSION + "\",\"capabilities\":{},\"serverInfo\":{\"name\":\"stand-in\"}}}";
+    private static final String NOTIFICATION = "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/message\",\"params\":{}}";
+
+    /** A stand-in server and the status its probe must report. */
+    private static final class Server {
+        final String name;
+        final McpProbe.Status expected;
+        final Handler handler;
+
+        Server(String name, McpProbe.Status expected, Handler handler) {
+            this.name = name;
+            this.expected = expected;
+            this.handler = handler;
+        }
+    }
+
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CountDownLatch stopped = new CountDownLatch(1);
+        List<Server> servers = List.of(
+                new Server("JSON response", McpProbe.Status.OK, exchange -> {
+                    exchange.getRequestBody().readAllBytes();
+                    send(exchange, 200, "application/json", RESPONSE);
+                }),
+                new Server("SSE response, stream left open", McpProbe.Status.OK, exchange -> {
+                    OutputStream body = openEvents(exchange);
+                    event(body, RESPONSE);
+                    stopped.await();
+                }),
+                new Server("SSE notification first, stream left open", McpProbe.Status.OK, exchange -> {
+                    OutputStream body = openEvents(exchange);
+                    event(body, NOTIFICATION);
+                    event(body, RESPONSE);
+                    stopped.await();
+                }),
+                new Server("sign-in required", McpProbe.Status.AUTH_REQUIRED, exchange -> {
+                    exchange.getRequestBody().readAllBytes();
+                    send(exchange, 401, "text/plain", "unauthorized");
+                }),
+                new Server("no headers", McpProbe.Status.TIMEOUT, exchange -> stopped.await()),
+                new Server("SSE stream without a response", McpProbe.Status.TIMEOUT, exchange -> {
+                    OutputStream body = openEvents(exchange);
+                    event(body, NOTIFICATION);
+                    stopped.await();
+                }));
+
+        HttpServer http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService handlers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(handlers);
+        List<McpCatalog.McpServer> entries = new ArrayList<>();
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            http.createContext("/" + i, exchange -> {
+                try {
+                    server.handler.handle(exchange);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            });
+            McpCatalog.McpServer entry = new McpCatalog.McpServer();
+            entry.name = server.name;
+            entry.type = "remote";
+            entry.url = "http://127.0.0.1:" + http.getAddress().getPort() + "/" + i;
+            entries.add(entry);
+        }
+        http.start();
+
+        int failed = 0;
+        try {
+            List<McpProbe.Result> results = new McpProbe(TIMEOUT, Map.of()).probeAll(entries);
+            for (int i = 0; i < servers.size(); i++) {
+                Server server = servers.get(i);
+                McpProbe.Result result = results.get(i);
+                String problem = null;
+                if (result.status != server.expected) {
+                    problem = result.status + ", expected " + server.expected + " (" + result.detail + ")";
+                } else if (result.latencyMillis > TIMEOUT.toMillis() + 500) {
+                    problem = "took " + result.latencyMillis + " ms with a " + TIMEOUT.toMillis() + " ms timeout";
+                }
+                System.out.println((problem == null ? "ok    " : "FAIL  ") + server.name + " ("
+                        + result.status + ", " + result.latencyMillis + " ms)" + (problem == null ? "" : ": " + problem));
+                if (problem != null) failed++;
+            }
+        } finally {
+            stopped.countDown();
+            http.stop(0);
+            handlers.shutdownNow();
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static OutputStream openEvents(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void event(OutputStream body, String json) throws IOException {
+        body.write(("event: message\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embeddable entry point: renders a config into an {@link OutputSink} and returns the
+ * result instead of printing.
+ *
+ * An engine is thread-safe and meant to be long-lived. Library indexes (with their cached
+ * file contents and packs) are built once per distinct layer list and shared by all calls;
+ * {@link #reload()} picks up library changes. Each call works on its own copy of the config.
+ */
+public class AictxEngine {
+
+    private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+
+    private final Path contextRoot;
+    private final Map<List<Path>, ContextIndex> indexes = new ConcurrentHashMap<>();
+    private volatile RenderCache renderCache;
+
+    /**
+     * Result of one generate call. When the config has validation errors nothing is rendered
+     * and files and outcomes are empty.
+     */
+    public static final class Result {
+        public final Map<String, String> files;
+        public final Map<String, OutputSink.Outcome> outcomes;
+        public final List<String> warnings;
+        public final List<Validator.Diagnostic> diagnostics;
+        /** {@link ContextIndex#fingerprint()} of the library (with layers) the config was rendered against. */
+        public final String libraryFingerprint;
+
+        Result(Map<String, String> files, Map<String, OutputSink.Outcome> outcomes,
+               List<String> warnings, List<Validator.Diagnostic> diagnostics, String libraryFingerprint) {
+            this.files = files;
+            this.outcomes = outcomes;
+            this.warnings = warnings;
+            this.diagnostics = diagnostics;
+            this.libraryFingerprint = libraryFingerprint;
+        }
+
+        public boolean isSuccess() {
+            return !Validator.hasErrors(diagnostics);
+        }
+    }
+
+    /**
+     * @param contextRoot base context library; configs may stack further contextLayers on it
+     */
+    public AictxEngine(Path contextRoot) {
+        this.contextRoot = contextRoot;
+    }
+
+    /**
+     * Share rendered outputs with other engines and CLI runs through a RenderCache.
+     */
+    public AictxEngine withRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+        return this;
+    }
+
+    /**
+     * Load a config file merged with its ancestor configs.
+     */
+    public ContextModel loadConfig(Path config) throws IOException {
+        return new ConfigResolver().resolve(config);
+    }
+
+    /**
+     * Validate and render a config into a sink.
+     *
+     * @param repoDir repository used for nested AGENTS.md files and auto selection, or null
+     */
+    public Result generate(ContextModel config, Path repoDir, OutputSink sink) throws IOException {
+        ContextModel ctx = config.copy();
+        List<String> missingLayers = new ArrayList<>();
+        ContextIndex index = indexFor(ctx, missingLayers);
+
+        List<Validator.Diagnostic> diagnostics = new ArrayList<>();
+        for (String layer : missingLayers) {
+            diagnostics.add(new Validator.Diagnostic(Validator.Severity.WARNING, ConfigResolver.CONFIG_FILE,
+                    "missing-layer", "context layer not found: " + layer));
+        }
+        diagnostics.addAll(new Validator(index).config(ConfigResolver.CONFIG_FILE, ctx).run());
+        if (Validator.hasErrors(diagnostics)) {
+            return new Result(Map.of(), Map.of(), List.of(), diagnostics, index.fingerprint());
+        }
+
+        Generator gen = new Generator(ctx, index, repoDir, false, false, false).withOutput(SILENT, SILENT);
+        RenderCache cache = renderCache;
+        if (cache != null) gen.withRenderCache(cache);
+        gen.generate(sink);
+        return new Result(Collections.unmodifiableMap(gen.render()), Collections.unmodifiableMap(gen.getResults()),
+                Collections.unmodifiableList(gen.getWarnings()), diagnostics, index.fingerprint());
+    }
+
+    /**
+     * Render a config in memory; nothing is written.
+     */
+    public Result render(ContextModel config, Path repoDir) throws IOException {
+        return generate(config, repoDir, new OutputSink.Memory());
+    }
+
+    /**
+     * Drop cached library indexes, e.g. after the context library was updated.
+     */
+    public void reload() {
+        indexes.clear();
+    }
+
+    /**
+     * Index for the config's layers; entries of layers that are not directories are added to
+     * missingLayers rather than printed.
+     */
+    private ContextIndex indexFor(ContextModel ctx, List<String> missingLayers) throws IOException {
+        List<Path> layers = VersionUtil.resolveContextLayers(contextRoot, ctx.contextLayers, missingLayers);
+        try {
+            // Concurrent first calls for the same layers wait for a single build
+            return indexes.computeIfAbsent(layers, key -> {
+                try {
+                    return ContextIndex.build(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable download of the context archive into a spool file.
+ *
+ * The first request asks for the first chunk. If the server answers 206, the remaining
+ * chunks are fetched in parallel, and each one is retried with backoff on failure. Completed
+ * chunks are recorded in a progress sidecar (spool + ".json"). An interrupted download
+ * resumes from there as long as the archive's ETag/Last-Modified is unchanged. Chunks are
+ * requested with If-Range, which only works with a strong ETag or a Last-Modified date;
+ * without one of those (e.g. only a weak ETag, as nginx sends for gzip) the archive is
+ * streamed in a single request, as it is from a server that ignores Range (200). Callers check the spool with
+ * {@link #verify} before extracting anything.
+ */
+public class ArchiveDownloader {
+
+    static final int CHUNK_SIZE = 1 << 20;
+    static final int PARALLELISM = 4;
+    static final int MAX_ATTEMPTS = 4;
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    static final Duration CHUNK_TIMEOUT = Duration.ofSeconds(60);
+    static final Duration FULL_TIMEOUT = Duration.ofMinutes(10);
+    static final Duration BACKOFF = Duration.ofMillis(500);
+
+    /** One client for all requests: connections (and HTTP/2 streams) are reused across chunks. */
+    static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    public static final class Result {
+        public final boolean notModified;
+        public final String etag;
+        public final String lastModified;
+        public final long size;
+        public final long resumedBytes;
+        public final boolean ranged;
+
+        Result(boolean notModified, String etag, String lastModified, long size, long resumedBytes, boolean ranged) {
+            this.notModified = notModified;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.resumedBytes = resumedBytes;
+            this.ranged = ranged;
+        }
+    }
+
+    private final URI uri;
+    private final Path spool;
+    private final Path progressFile;
+
+    public ArchiveDownloader(URI uri, Path spool) {
+        this.uri = uri;
+        this.spool = spool;
+        this.progressFile = spool.resolveSibling(spool.getFileName() + ".json");
+    }
+
+    public Path spool() {
+        return spool;
+    }
+
+    /**
+     * Download the archive into the spool file.
+     *
+     * @param conditional If-None-Match / If-Modified-Since headers; a 304 returns notModified
+     */
+    public Result download(Map<String, String> conditional) throws IOException, InterruptedException {
+        Files.createDirectories(spool.toAbsolutePath().getParent());
+        HttpRequest.Builder first = request(FULL_TIMEOUT).header("Range", range(0, CHUNK_SIZE));
+        conditional.forEach(first::header);
+        HttpResponse<byte[]> response = send(first.build(), FULL_TIMEOUT, firstChunkOrSpool());
+
+        int code = response.statusCode();
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        if (code == 304) {
+            return new Result(true, etag, lastModified, 0, 0, false);
+        }
+        if (code == 200) {
+            // Range ignored: the whole archive was streamed into the spool
+            Files.deleteIfExists(progressFile);
+            return new Result(false, etag, lastModified, Files.size(spool), 0, false);
+        }
+        if (code != 206) {
+            throw new IOException("HTTP " + code + " fetching context library from " + uri);
+        }
+
+        Matcher range = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+        if (!range.matches() || Long.parseLong(range.group(1)) != 0) {
+            throw new IOException("unexpected Content-Range from " + uri + ": "
+                    + response.headers().firstValue("Content-Range").orElse("(none)"));
+        }
+        long total = Long.parseLong(range.group(3));
+        if (response.body().length != Math.min(CHUNK_SIZE, total)) {
+            throw new IOException("short first chunk from " + uri + ": " + response.body().length + " bytes");
+        }
+        String validator = rangeValidator(etag, lastModified);
+        if (validator == null && total > CHUNK_SIZE) {
+            // Further chunks could not be tied to the version of the first one
+            streamWhole();
+            return new Result(false, etag, lastModified, Files.size(spool), 0, false);
+        }
+        long resumed = fetchRanges(total, validator, response.body());
+        return new Result(false, etag, lastModified, total, resumed, true);
+    }
+
+    /**
+     * If-Range value for chunk requests: a strong ETag, else Last-Modified, else null. A server
+     * must ignore If-Range with a weak ETag (RFC 9110 13.1.5) and would answer every chunk with 200.
+     */
+    static String rangeValidator(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return lastModified;
+    }
+
+    /**
+     * Stream the whole archive into the spool in one request, without Range.
+     */
+    private void streamWhole() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = send(request(FULL_TIMEOUT).build(), FULL_TIMEOUT, firstChunkOrSpool());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " fetching context library from " + uri);
+        }
+        Files.deleteIfExists(progressFile);
+    }
+
+    /**
+     * Delete the spool file and its progress sidecar.
+     */
+    public void discard() throws IOException {
+        Files.deleteIfExists(spool);
+        Files.deleteIfExists(progressFile);
+    }
+
+    // ── Ranges ───────────────────────────────────────────────────────────────
+
+    /**
+     * Fetch every chunk not already recorded as complete. Returns the number of bytes resumed.
+     */
+    private long fetchRanges(long total, String validator, byte[] firstChunk) throws IOException, InterruptedException {
+        int chunks = (int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        Progress progress = Progress.load(progressFile);
+        boolean resumable = progress != null && validator != null
+                && uri.toString().equals(progress.url) && validator.equals(progress.validator)
+                && progress.size == total && progress.chunkSize == CHUNK_SIZE
+                && Files.exists(spool) && Files.size(spool) == total;
+        if (!resumable) {
+            progress = new Progress(uri.toString(), validator, total, CHUNK_SIZE);
+        }
+
+        long resumed = 0;
+        for (int chunk : progress.done) {
+            if (chunk != 0) resumed += chunkLength(chunk, total);
+        }
+
+        try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (!resumable) {
+                // Allocate the full length up front so an interrupted download can be resumed
+                channel.truncate(0);
+                writeFully(channel, new byte[1], total - 1);
+            }
+            writeFully(channel, firstChunk, 0);
+            progress.complete(0, progressFile);
+
+            List<Integer> pending = new ArrayList<>();
+            for (int chunk = 1; chunk < chunks; chunk++) {
+                if (!progress.done.contains(chunk)) pending.add(chunk);
+            }
+            if (pending.isEmpty()) return resumed;
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(pending.size(), PARALLELISM), daemonThreads());
+            Progress shared = progress;
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int chunk : pending) {
+                    futures.add(executor.submit(() -> {
+                        fetchChunk(channel, chunk, total, validator);
+                        shared.complete(chunk, progressFile);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException) throw (IOException) cause;
+                        if (cause instanceof InterruptedException) throw (InterruptedException) cause;
+                        throw new IOException(cause);
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return resumed;
+    }
+
+    private void fetchChunk(FileChannel channel, int chunk, long total, String validator) throws IOException, InterruptedException {
+        long start = (long) chunk * CHUNK_SIZE;
+        long length = chunkLength(chunk, total);
+        HttpRequest.Builder request = request(CHUNK_TIMEOUT).header("Range", range(start, length));
+        // If the archive changed since the first chunk, the server sends all of it (200) instead
+        if (validator != null) request.header("If-Range", validator);
+        HttpResponse<byte[]> response = send(request.build(), CHUNK_TIMEOUT, HttpResponse.BodyHandlers.ofByteArray());
+
+        if (response.statusCode() == 200) {
+            throw new IOException("context archive changed during download; run the command again");
+        }
+        Matcher range = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+        if (response.statusCode() != 206 || !range.matches() || Long.parseLong(range.group(1)) != start
+                || response.body().length != length) {
+            throw new IOException("bad response for bytes " + start + "-" + (start + length - 1) + " of " + uri
+                    + ": HTTP " + response.statusCode());
+        }
+        writeFully(channel, response.body(), start);
+    }
+
+    private static long chunkLength(int chunk, long total) {
+        return Math.min(CHUNK_SIZE, total - (long) chunk * CHUNK_SIZE);
+    }
+
+    private static String range(long start, long length) {
+        return "bytes=" + start + "-" + (start + length - 1);
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Keep a 206 body in memory (it is one chunk); stream a 200 body straight into the spool.
+     */
+    private HttpResponse.BodyHandler<byte[]> firstChunkOrSpool() {
+        return info -> {
+            if (info.statusCode() == 200) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofFile(spool, StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                        path -> new byte[0]);
+            }
+            return HttpResponse.BodySubscribers.ofByteArray();
+        };
+    }
+
+    // ── Requests ─────────────────────────────────────────────────────────────
+
+    private HttpRequest.Builder request(Duration timeout) {
+        return HttpRequest.newBuilder(uri).timeout(timeout);
+    }
+
+    /**
+     * Send with retries on connection errors, timeouts, 429 and 5xx, backing off exponentially.
+     * The timeout bounds the whole exchange, including the body.
+     */
+    private static <T> HttpResponse<T> send(HttpRequest request, Duration timeout, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            String failure;
+            CompletableFuture<HttpResponse<T>> future = CLIENT.sendAsync(request, handler);
+            try {
+                HttpResponse<T> response = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                int code = response.statusCode();
+                if (code != 429 && code / 100 != 5) return response;
+                failure = "HTTP " + code;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failure = "no response within " + timeout.toSeconds() + "s";
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof IOException)) throw new IOException(cause);
+                failure = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IOException(failure + " (" + request.headers().firstValue("Range").map(r -> r + " of ").orElse("")
+                        + request.uri() + ", " + attempt + " attempts)");
+            }
+            long delay = BACKOFF.toMillis() << (attempt - 1);
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        }
+    }
+
+    // ── Verification ─────────────────────────────────────────────────────────
+
+    /**
+     * Check the downloaded spool against a hex SHA-256 (null skips the check). A mismatching
+     * spool is discarded so the next attempt starts over.
+     */
+    public void verify(String expectedSha256) throws IOException {
+        if (expectedSha256 == null) return;
+        String actual = sha256(spool);
+        if (!actual.equalsIgnoreCase(expectedSha256.trim())) {
+            discard();
+            throw new IOException("checksum mismatch for " + uri + ": expected " + expectedSha256.trim() + ", got " + actual);
+        }
+    }
+
+    static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Digest published next to an archive as url + ".sha256" (sha256sum format), or null if there is none.
+     */
+    public static String publishedSha256(URI archive) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(archive + ".sha256")).timeout(CHUNK_TIMEOUT).build();
+        HttpResponse<String> response = send(request, CHUNK_TIMEOUT, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) return null;
+        String[] fields = response.body().trim().split("\\s+");
+        return fields.length > 0 && fields[0].matches("[0-9a-fA-F]{64}") ? fields[0] : null;
+    }
+
+    // ── Progress ─────────────────────────────────────────────────────────────
+
+    /**
+     * Completed chunks of a spool file, saved after each chunk.
+     */
+    static final class Progress {
+        public String url;
+        public String validator;
+        public long size;
+        public int chunkSize;
+        public SortedSet<Integer> done = new TreeSet<>();
+
+        Progress() {
+        }
+
+        Progress(String url, String validator, long size, int chunkSize) {
+            this.url = url;
+            this.validator = validator;
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+
+        static Progress load(Path file) {
+            try {
+                return MAPPER.readValue(file.toFile(), Progress.class);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        synchronized void complete(int chunk, Path file) throws IOException {
+            done.add(chunk);
+            // Without a validator a resumed download could mix two versions; don't record it
+            if (validator == null) return;
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                MAPPER.writeValue(tmp.toFile(), this);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "aictx-download");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
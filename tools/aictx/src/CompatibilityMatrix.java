@@ -0,0 +1,234 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Renders configs against several context library versions (aictx matrix).
+ *
+ * Every config × library combination is rendered in memory on a thread pool; nothing is
+ * written to the repositories. Each library gets one {@link AictxEngine}, so it is loaded
+ * once and shared by all configs rendered against it. The first library is the baseline
+ * the others are compared with.
+ */
+public class CompatibilityMatrix implements Closeable {
+
+    /** Rough token estimate for prompt budgets: four characters per token. */
+    static final int CHARS_PER_TOKEN = 4;
+
+    public static final class Library {
+        public final String spec;
+        public final Path root;
+
+        Library(String spec, Path root) {
+            this.spec = spec;
+            this.root = root;
+        }
+    }
+
+    /** One config rendered against one library. */
+    public static final class Cell {
+        public final String config;
+        public final String library;
+        public final boolean success;
+        public final String libraryFingerprint;
+        /** SHA-256 over all output paths and contents; equal digests mean identical outputs. */
+        public final String digest;
+        public final int files;
+        public final long bytes;
+        public final long tokens;
+        public final long bytesDelta;
+        public final long tokensDelta;
+        /** Outputs added, removed or changed relative to the baseline library. */
+        public final List<String> changedFiles;
+        public final List<String> warnings;
+        public final List<String> errors;
+
+        Cell(String config, String library, AictxEngine.Result result, Cell baseline,
+             Map<String, String> baselineFiles) {
+            this.config = config;
+            this.library = library;
+            this.success = result.isSuccess();
+            this.libraryFingerprint = result.libraryFingerprint;
+            this.files = result.files.size();
+            this.digest = digest(result.files);
+
+            long byteCount = 0;
+            long tokenCount = 0;
+            for (String content : result.files.values()) {
+                byteCount += content.getBytes(StandardCharsets.UTF_8).length;
+                tokenCount += estimateTokens(content);
+            }
+            this.bytes = byteCount;
+            this.tokens = tokenCount;
+            this.bytesDelta = baseline != null ? bytes - baseline.bytes : 0;
+            this.tokensDelta = baseline != null ? tokens - baseline.tokens : 0;
+
+            List<String> changed = new ArrayList<>();
+            if (baselineFiles != null) {
+                Set<String> paths = new TreeSet<>(baselineFiles.keySet());
+                paths.addAll(result.files.keySet());
+                for (String path : paths) {
+                    if (!Objects.equals(baselineFiles.get(path), result.files.get(path))) changed.add(path);
+                }
+            }
+            this.changedFiles = changed;
+
+            List<String> warningList = new ArrayList<>(result.warnings);
+            List<String> errorList = new ArrayList<>();
+            for (Validator.Diagnostic d : result.diagnostics) {
+                (d.severity == Validator.Severity.ERROR ? errorList : warningList).add("[" + d.code + "] " + d.message);
+            }
+            this.warnings = warningList;
+            this.errors = errorList;
+        }
+
+        Cell(String config, String library, String error) {
+            this.config = config;
+            this.library = library;
+            this.success = false;
+            this.libraryFingerprint = null;
+            this.digest = null;
+            this.files = 0;
+            this.bytes = 0;
+            this.tokens = 0;
+            this.bytesDelta = 0;
+            this.tokensDelta = 0;
+            this.changedFiles = List.of();
+            this.warnings = List.of();
+            this.errors = List.of(error);
+        }
+    }
+
+    private final List<Library> libraries = new ArrayList<>();
+    private final List<AictxEngine> engines = new ArrayList<>();
+    private final List<Path> extracted = new ArrayList<>();
+
+    /**
+     * Add a library version: a library directory (or a checkout containing context/), a
+     * repository archive (.zip), "cached" for the downloaded library in ~/.aictx, or a release
+     * tag fetched into ~/.aictx/versions. The first library added is the baseline.
+     */
+    public Library addLibrary(String spec) throws IOException, InterruptedException {
+        Path root = resolveLibrary(spec);
+        Library library = new Library(spec, root);
+        libraries.add(library);
+        engines.add(new AictxEngine(root));
+        return library;
+    }
+
+    public List<Library> libraries() {
+        return Collections.unmodifiableList(libraries);
+    }
+
+    /**
+     * Render every config against every library, with up to parallelism renders at a time.
+     * Cells are grouped by config, in library order.
+     */
+    public List<Cell> run(List<Path> configs, int parallelism) throws InterruptedException {
+        if (configs.isEmpty() || libraries.isEmpty()) return List.of();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, configs.size() * libraries.size())), daemonThreads());
+        try {
+            Map<Path, Future<ContextModel>> models = new LinkedHashMap<>();
+            for (Path config : configs) {
+                models.put(config, executor.submit(() -> new ConfigResolver().resolve(config)));
+            }
+            List<List<Future<AictxEngine.Result>>> renders = new ArrayList<>();
+            for (Path config : configs) {
+                List<Future<AictxEngine.Result>> row = new ArrayList<>();
+                for (AictxEngine engine : engines) {
+                    Future<ContextModel> model = models.get(config);
+                    Path repoDir = config.toAbsolutePath().getParent();
+                    row.add(executor.submit(() -> engine.render(model.get(), repoDir)));
+                }
+                renders.add(row);
+            }
+
+            List<Cell> cells = new ArrayList<>();
+            for (int c = 0; c < configs.size(); c++) {
+                String config = configs.get(c).toString();
+                Cell baseline = null;
+                Map<String, String> baselineFiles = null;
+                for (int l = 0; l < libraries.size(); l++) {
+                    String library = libraries.get(l).spec;
+                    Cell cell;
+                    try {
+                        AictxEngine.Result result = renders.get(c).get(l).get();
+                        cell = new Cell(config, library, result, baseline, baselineFiles);
+                        if (l == 0 && cell.success) baselineFiles = result.files;
+                    } catch (ExecutionException e) {
+                        cell = new Cell(config, library, describe(e));
+                    }
+                    if (l == 0 && cell.success) baseline = cell;
+                    cells.add(cell);
+                }
+            }
+            return cells;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Delete libraries extracted from archives.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path dir : extracted) {
+            ContextCache.deleteRecursively(dir);
+        }
+        extracted.clear();
+    }
+
+    private Path resolveLibrary(String spec) throws IOException, InterruptedException {
+        if ("cached".equals(spec)) {
+            Path cached = ContextCache.fromEnvironment().resolve();
+            if (cached == null) throw new IOException("no cached context library (try: aictx fetch-context)");
+            return cached;
+        }
+        Path path = Path.of(spec);
+        if (Files.isDirectory(path)) {
+            if (VersionUtil.isValidContextDir(path)) return path.toAbsolutePath().normalize();
+            if (VersionUtil.isValidContextDir(path.resolve("context"))) return path.resolve("context").toAbsolutePath().normalize();
+            throw new IOException("not a context library (no globals/ directory): " + spec);
+        }
+        if (Files.isRegularFile(path) && spec.endsWith(".zip")) {
+            Path dir = Files.createTempDirectory("aictx-matrix-");
+            extracted.add(dir);
+            try (InputStream archive = new BufferedInputStream(Files.newInputStream(path))) {
+                ContextCache.extractContext(archive, dir);
+            }
+            if (!VersionUtil.isValidContextDir(dir)) throw new IOException("archive has no context/globals directory: " + spec);
+            return dir;
+        }
+        return ContextCache.version(spec);
+    }
+
+    static long estimateTokens(String content) {
+        return (content.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static String digest(Map<String, String> files) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> file : new TreeMap<>(files).entrySet()) {
+            sb.append(file.getKey()).append('\0').append(file.getValue()).append('\0');
+        }
+        return DriftChecker.hex(DriftChecker.sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String describe(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ExecutionException && cause.getCause() != null) cause = cause.getCause();
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "aictx-matrix");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,158 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Resolves nested aictx-context.yaml files in a monorepo.
+ *
+ * A module config inherits from the nearest ancestor config up to the repository root
+ * (the directory containing .git) or a config that sets {@code root: true}.
+ * Merge semantics:
+ * - scalars and nested sections: the child wins per key
+ * - lists: parent entries first, then child entries not already present;
+ *   a child entry "!id" removes an inherited entry (and is kept as an exclusion if there is
+ *   nothing to remove, which pathRules uses to drop rules it did not list explicitly);
+ *   a child entry "id" cancels an inherited "!id"
+ * - {@code override: [skills, mcp.servers]} replaces the listed lists instead of merging
+ * Relative {@code contextLayers} entries resolve against the config file that declares them.
+ *
+ * Resolved trees are memoized per config file, so sibling modules parse shared ancestors once.
+ */
+public class ConfigResolver {
+
+    public static final String CONFIG_FILE = "aictx-context.yaml";
+
+    // Directories never searched for module configs
+    static final Set<String> SKIP_DIRS = Set.of(
+            ".git", ".gradle", ".idea", ".dart_tool", ".aictx", "build", "target", "node_modules");
+
+    private static final String ROOT_KEY = "root";
+    private static final String OVERRIDE_KEY = "override";
+
+    private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private final Map<Path, ObjectNode> resolved = new HashMap<>();
+
+    /**
+     * Load a config file merged with all of its ancestors.
+     */
+    public ContextModel resolve(Path configFile) throws IOException {
+        ObjectNode tree = resolveTree(configFile.toAbsolutePath().normalize());
+        return mapper.treeToValue(tree, ContextModel.class).withDefaults();
+    }
+
+    private ObjectNode resolveTree(Path configFile) throws IOException {
+        ObjectNode cached = resolved.get(configFile);
+        if (cached != null) return cached;
+
+        JsonNode node = mapper.readTree(configFile.toFile());
+        ObjectNode own = node instanceof ObjectNode ? (ObjectNode) node : mapper.createObjectNode();
+        absolutizeLayers(own, configFile);
+
+        ObjectNode merged;
+        Path parentConfig = own.path(ROOT_KEY).asBoolean(false) ? null : findParentConfig(configFile);
+        if (parentConfig == null) {
+            merged = own.deepCopy();
+        } else {
+            Set<String> overrides = new HashSet<>();
+            own.path(OVERRIDE_KEY).forEach(n -> overrides.add(n.asText()));
+            merged = resolveTree(parentConfig).deepCopy();
+            merge(merged, own, "", overrides);
+        }
+        merged.remove(ROOT_KEY);
+        merged.remove(OVERRIDE_KEY);
+
+        resolved.put(configFile, merged);
+        return merged;
+    }
+
+    private static void absolutizeLayers(ObjectNode config, Path configFile) {
+        JsonNode layers = config.get("contextLayers");
+        if (layers == null || !layers.isArray()) return;
+        List<String> relative = new ArrayList<>();
+        layers.forEach(n -> relative.add(n.asText()));
+        ArrayNode absolute = JsonNodeFactory.instance.arrayNode();
+        ContextModel.absoluteLayers(relative, configFile).forEach(absolute::add);
+        config.set("contextLayers", absolute);
+    }
+
+    /**
+     * Find the nearest ancestor config, stopping at the repository root.
+     */
+    static Path findParentConfig(Path configFile) {
+        Path dir = configFile.getParent();
+        if (dir == null || Files.exists(dir.resolve(".git"))) return null;
+        for (Path p = dir.getParent(); p != null; p = p.getParent()) {
+            Path candidate = p.resolve(CONFIG_FILE);
+            if (Files.isRegularFile(candidate)) return candidate;
+            if (Files.exists(p.resolve(".git"))) return null;
+        }
+        return null;
+    }
+
+    private static void merge(ObjectNode target, ObjectNode child, String prefix, Set<String> overrides) {
+        Iterator<Map.Entry<String, JsonNode>> fields = child.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String key = field.getKey();
+            String path = prefix + key;
+            JsonNode value = field.getValue();
+            JsonNode existing = target.get(key);
+
+            if (value.isObject() && existing != null && existing.isObject()) {
+                merge((ObjectNode) existing, (ObjectNode) value, path + ".", overrides);
+            } else if (value.isArray() && existing != null && existing.isArray() && !overrides.contains(path)) {
+                target.set(key, mergeLists((ArrayNode) existing, (ArrayNode) value));
+            } else if (value.isArray()) {
+                target.set(key, mergeLists(JsonNodeFactory.instance.arrayNode(), (ArrayNode) value));
+            } else {
+                target.set(key, value.deepCopy());
+            }
+        }
+    }
+
+    private static ArrayNode mergeLists(ArrayNode parent, ArrayNode child) {
+        Set<String> entries = new LinkedHashSet<>();
+        parent.forEach(n -> entries.add(n.asText()));
+        for (JsonNode n : child) {
+            String entry = n.asText();
+            if (entry.startsWith("!")) {
+                if (!entries.remove(entry.substring(1))) entries.add(entry);
+            } else {
+                // Listing an entry again re-enables one the parent excluded
+                entries.remove("!" + entry);
+                entries.add(entry);
+            }
+        }
+        ArrayNode result = JsonNodeFactory.instance.arrayNode();
+        entries.forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Find every config file under root, skipping build output and VCS directories.
+     */
+    public static List<Path> discoverModules(Path root) throws IOException {
+        List<Path> configs = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && SKIP_DIRS.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Path config = dir.resolve(CONFIG_FILE);
+                if (Files.isRegularFile(config)) configs.add(config);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(configs);
+        return configs;
+    }
+}
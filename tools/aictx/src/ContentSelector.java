@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Chooses skills and globals for a repository from what the repository contains
+ * (selection.mode: auto).
+ *
+ * A bounded scan collects features (web, database, infra, tests, ...) from build files and
+ * directory names. Each candidate is scored by pack affinity and by how many of its
+ * frontmatter signals mention a detected feature; entries listed in the config are pinned.
+ */
+public class ContentSelector {
+
+    static final double PACK_WEIGHT = 0.4;
+    static final double SIGNAL_WEIGHT = 0.3;
+    static final double SIGNAL_CAP = 0.6;
+
+    // Bounds of the repository scan
+    static final int MAX_DEPTH = 4;
+    static final int MAX_ENTRIES = 5000;
+    static final long MAX_BUILD_FILE_BYTES = 512 * 1024;
+
+    // Build file dependency fragment -> feature, sorted so the reported evidence is deterministic
+    static final SortedMap<String, String> DEPENDENCY_FEATURES = new TreeMap<>(Map.ofEntries(
+            Map.entry("spring-boot-starter-web", "web"),
+            Map.entry("spring-webmvc", "web"),
+            Map.entry("spring-webflux", "web"),
+            Map.entry("micronaut-http", "web"),
+            Map.entry("quarkus-resteasy", "web"),
+            Map.entry("ws.rs", "web"),
+            Map.entry("spring-boot-starter-data", "database"),
+            Map.entry("hibernate", "database"),
+            Map.entry("jdbc", "database"),
+            Map.entry("flyway", "database"),
+            Map.entry("liquibase", "database"),
+            Map.entry("mybatis", "database"),
+            Map.entry("jooq", "database"),
+            Map.entry("sqflite", "database"),
+            Map.entry("junit", "tests"),
+            Map.entry("testng", "tests"),
+            Map.entry("mockito", "tests"),
+            Map.entry("flutter_test", "tests"),
+            Map.entry("spring-security", "security"),
+            Map.entry("oauth2", "security"),
+            Map.entry("jjwt", "security"),
+            Map.entry("sdk: flutter", "flutter")));
+
+    // Directory or file name -> feature
+    static final Map<String, String> PATH_FEATURES = Map.ofEntries(
+            Map.entry("migration", "database"),
+            Map.entry("migrations", "database"),
+            Map.entry("infra", "infra"),
+            Map.entry("terraform", "infra"),
+            Map.entry("deploy", "infra"),
+            Map.entry("helm", "infra"),
+            Map.entry("Dockerfile", "infra"),
+            Map.entry("Chart.yaml", "infra"),
+            Map.entry("test", "tests"),
+            Map.entry("workflows", "ci"),
+            Map.entry("Jenkinsfile", "ci"),
+            Map.entry(".gitlab-ci.yml", "ci"),
+            Map.entry("pubspec.yaml", "flutter"));
+
+    // Feature -> words in skill signals and ids that refer to it
+    static final Map<String, Set<String>> FEATURE_KEYWORDS = Map.of(
+            "web", Set.of("endpoint", "rest", "api", "http", "controller", "resource", "service"),
+            "database", Set.of("database", "sql", "migration", "crud", "repository", "schema"),
+            "infra", Set.of("infra", "infrastructure", "terraform", "deploy", "docker", "kubernetes"),
+            "tests", Set.of("test", "testing", "coverage"),
+            "ci", Set.of("ci", "pipeline", "review", "pr"),
+            "security", Set.of("security", "auth", "secret"),
+            "flutter", Set.of("flutter", "widget", "screen", "page", "view", "feature"));
+
+    private static final Set<String> BUILD_FILES = Set.of(
+            "pom.xml", "build.gradle", "build.gradle.kts", "pubspec.yaml");
+    private static final Pattern WORD = Pattern.compile("[a-z0-9]+");
+
+    /**
+     * A scored candidate and the reasons for its score.
+     */
+    public static final class Choice {
+        public final String kind;
+        public final String id;
+        public final double score;
+        public final boolean included;
+        public final List<String> reasons;
+
+        Choice(String kind, String id, double score, boolean included, List<String> reasons) {
+            this.kind = kind;
+            this.id = id;
+            this.score = score;
+            this.included = included;
+            this.reasons = reasons;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %-6s %-28s %.2f  %s", included ? "+" : "-", kind, id, score, String.join("; ", reasons));
+        }
+    }
+
+    private final ContextIndex index;
+    private final Map<String, String> features;
+
+    /**
+     * @param features detected feature -> evidence, see {@link #scan(Path)}
+     */
+    public ContentSelector(ContextIndex index, Map<String, String> features) {
+        this.index = index;
+        this.features = features;
+    }
+
+    // ── Repository scan ──────────────────────────────────────────────────────
+
+    /**
+     * Detect repository features, at most MAX_DEPTH levels and MAX_ENTRIES entries deep.
+     * Returns feature -> first piece of evidence, e.g. "database" -> "flyway in pom.xml".
+     */
+    public static Map<String, String> scan(Path root) throws IOException {
+        Map<String, String> features = new TreeMap<>();
+        List<Path> level = List.of(root);
+        int entries = 0;
+        for (int depth = 0; depth <= MAX_DEPTH && !level.isEmpty() && entries < MAX_ENTRIES; depth++) {
+            List<Path> next = new ArrayList<>();
+            for (Path dir : level) {
+                List<Path> children;
+                try (Stream<Path> list = Files.list(dir)) {
+                    children = list.sorted().limit(MAX_ENTRIES - entries).collect(Collectors.toList());
+                } catch (IOException e) {
+                    continue;
+                }
+                entries += children.size();
+                for (Path child : children) {
+                    String name = child.getFileName().toString();
+                    String relative = root.relativize(child).toString().replace('\\', '/');
+                    String feature = PATH_FEATURES.get(name);
+                    if (feature != null) features.putIfAbsent(feature, relative);
+                    if (Files.isDirectory(child)) {
+                        if (!ConfigResolver.SKIP_DIRS.contains(name)) next.add(child);
+                    } else if (BUILD_FILES.contains(name)) {
+                        scanBuildFile(child, relative, features);
+                    } else if (name.endsWith(".tf")) {
+                        features.putIfAbsent("infra", relative);
+                    }
+                }
+                if (entries >= MAX_ENTRIES) break;
+            }
+            level = next;
+        }
+        return features;
+    }
+
+    private static void scanBuildFile(Path file, String relative, Map<String, String> features) throws IOException {
+        if (Files.size(file) > MAX_BUILD_FILE_BYTES) return;
+        String content = Files.readString(file);
+        for (Map.Entry<String, String> dependency : DEPENDENCY_FEATURES.entrySet()) {
+            if (content.contains(dependency.getKey())) {
+                features.putIfAbsent(dependency.getValue(), dependency.getKey() + " in " + relative);
+            }
+        }
+    }
+
+    // ── Scoring ──────────────────────────────────────────────────────────────
+
+    /**
+     * Score every skill and global the config could use and include those at or above
+     * ctx.selection.threshold. Listed config entries are always included.
+     */
+    public List<Choice> select(ContextModel ctx) throws IOException {
+        // Selected packs merged with the packs they extend
+        List<PackModel> packs = new ArrayList<>();
+        for (String packId : ctx.packs) {
+            PackModel pack = PackGraph.resolve(index, packId);
+            if (pack != null) packs.add(pack);
+        }
+
+        List<Choice> choices = new ArrayList<>();
+        for (Map.Entry<String, Path> skill : skillCandidates(PackGraph.closure(index, ctx.packs).packs).entrySet()) {
+            Map<String, Object> frontmatter = Frontmatter.read(skill.getValue());
+            List<String> signals = Frontmatter.strings(frontmatter, "signals");
+            choices.add(score(ctx, "skill", skill.getKey(), ctx.skills, packs, p -> p.defaultSkills, signals));
+        }
+        for (String globalId : globalCandidates()) {
+            choices.add(score(ctx, "global", globalId, ctx.globals, packs, p -> p.defaultGlobals, List.of()));
+        }
+        return choices;
+    }
+
+    private Choice score(ContextModel ctx, String kind, String id, List<String> listed, List<PackModel> packs,
+                         Function<PackModel, List<String>> defaults, List<String> signals) throws IOException {
+        List<String> reasons = new ArrayList<>();
+        if (listed.contains(id)) {
+            reasons.add("listed in config");
+            return new Choice(kind, id, 1.0, true, reasons);
+        }
+
+        double score = 0;
+        for (PackModel pack : packs) {
+            boolean fromPack = defaults.apply(pack).contains(id) || providesSkill(pack.id, id);
+            if (fromPack && pack.appliesToRepoTypes.contains(ctx.repoType)) {
+                score += PACK_WEIGHT;
+                reasons.add("from pack " + pack.id + " for " + ctx.repoType);
+                break;
+            }
+        }
+
+        // The id counts as a signal, so entries without frontmatter can still match
+        List<String> phrases = new ArrayList<>(signals);
+        phrases.add(id);
+        double signalScore = 0;
+        for (String phrase : phrases) {
+            String feature = matchFeature(phrase);
+            if (feature == null) continue;
+            signalScore += SIGNAL_WEIGHT;
+            reasons.add("'" + phrase + "' matches " + feature + " (" + features.get(feature) + ")");
+            if (signalScore >= SIGNAL_CAP) break;
+        }
+        score += Math.min(signalScore, SIGNAL_CAP);
+
+        if (reasons.isEmpty()) reasons.add("no pack or repository signal");
+        return new Choice(kind, id, score, score >= ctx.selection.threshold, reasons);
+    }
+
+    /**
+     * First detected feature whose keywords occur in the phrase, or null.
+     */
+    private String matchFeature(String phrase) {
+        Matcher words = WORD.matcher(phrase.toLowerCase(Locale.ROOT));
+        while (words.find()) {
+            for (String feature : features.keySet()) {
+                if (FEATURE_KEYWORDS.getOrDefault(feature, Set.of()).contains(words.group())) return feature;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether a pack or one of its ancestors ships the skill in its skills/ directory.
+     */
+    private boolean providesSkill(String packId, String skillId) throws IOException {
+        for (PackModel pack : PackGraph.closure(index, List.of(packId)).packs) {
+            if (index.exists("packs/" + pack.id + "/skills/" + skillId + ".skill.md")) return true;
+        }
+        return false;
+    }
+
+    private Map<String, Path> skillCandidates(List<PackModel> packs) {
+        Map<String, Path> skills = new TreeMap<>();
+        for (String id : index.ids()) {
+            if (id.matches("skills/[^/]+\\.skill\\.md")) {
+                skills.put(id.substring("skills/".length(), id.length() - ".skill.md".length()), index.resolve(id));
+            }
+        }
+        // Skills of selected packs; a global skill with the same id wins, as in Generator
+        for (PackModel pack : packs) {
+            String prefix = "packs/" + pack.id + "/skills/";
+            for (String id : index.ids()) {
+                if (id.startsWith(prefix) && id.endsWith(".skill.md")) {
+                    skills.putIfAbsent(id.substring(prefix.length(), id.length() - ".skill.md".length()), index.resolve(id));
+                }
+            }
+        }
+        return skills;
+    }
+
+    private Set<String> globalCandidates() {
+        Set<String> globals = new TreeSet<>();
+        for (String id : index.ids()) {
+            if (id.matches("globals/[^/]+\\.md")) {
+                globals.add(id.substring("globals/".length(), id.length() - ".md".length()));
+            }
+        }
+        return globals;
+    }
+
+    /**
+     * A copy of the config whose skills and globals are the included choices:
+     * listed entries first, in config order, then the selected ones by id.
+     * The config itself is not changed.
+     */
+    public static ContextModel apply(ContextModel ctx, List<Choice> choices) {
+        ContextModel selected = ctx.copy();
+        selected.skills = included(ctx.skills, choices, "skill");
+        selected.globals = included(ctx.globals, choices, "global");
+        return selected;
+    }
+
+    private static List<String> included(List<String> listed, List<Choice> choices, String kind) {
+        List<String> result = new ArrayList<>(listed);
+        for (Choice choice : choices) {
+            if (choice.included && choice.kind.equals(kind) && !result.contains(choice.id)) {
+                result.add(choice.id);
+            }
+        }
+        return result;
+    }
+}
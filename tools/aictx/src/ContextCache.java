@@ -0,0 +1,480 @@
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The downloaded context library in ~/.aictx, with a stale-while-revalidate policy.
+ *
+ * A cached library is always served immediately. When it is older than the TTL
+ * (AICTX_CONTEXT_TTL, default 24h) a background thread revalidates it with a conditional
+ * request and stages a new version; the next run promotes it. AICTX_OFFLINE never touches
+ * the network and AICTX_CONTEXT_URL points at another archive (e.g. a local server).
+ *
+ * Every downloaded version gets its own directory and is never modified once published.
+ * context.json names the version in use, so promotion is a single atomic rename of that file:
+ * a run reads the pointer once and keeps using its version even if another process promotes
+ * a newer one meanwhile. Replaced versions are deleted only after RETIRED_GRACE, so runs (and
+ * long-lived engines) still reading them are not cut off.
+ *
+ * Layout under ~/.aictx:
+ *   context.json        version in use ("dir") and its metadata (fetchedAt, etag, lastModified, url)
+ *   context-<id>/       library versions
+ *   context.next.json   staged version, promoted at the start of the next run
+ *   context.lock        serializes revalidation, promotion and cleanup across processes
+ *   context/            library of CLI versions before context-<id>/, used until the first update
+ *   versions/<tag>/     released library versions fetched by {@link #version} (aictx matrix)
+ */
+public class ContextCache {
+
+    static final String DEFAULT_URL = "https://github.com/" + VersionUtil.GITHUB_REPO
+            + "/archive/refs/heads/" + VersionUtil.GITHUB_BRANCH + ".zip";
+    static final Duration DEFAULT_TTL = Duration.ofHours(24);
+    /** How long main waits for a background refresh; an unfinished download resumes on a later run. */
+    static final Duration BACKGROUND_WAIT = Duration.ofSeconds(3);
+    static final Duration RETIRED_GRACE = Duration.ofHours(24);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*([smhd]?)");
+    private static final Pattern TAG = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+    private static final Pattern VERSION_ID = Pattern.compile("[0-9a-f]+");
+    private static volatile Thread background;
+
+    /** Legacy library directory; also the base name of context-<id>/, context.json and friends. */
+    private final Path dir;
+    private final Path metaFile;
+    private final Path nextMetaFile;
+    private final Path lockFile;
+    private final String url;
+    private final Duration ttl;
+    private final boolean offline;
+
+    public ContextCache(Path dir, String url, Duration ttl, boolean offline) {
+        this.dir = dir;
+        this.metaFile = dir.resolveSibling(dir.getFileName() + ".json");
+        this.nextMetaFile = dir.resolveSibling(dir.getFileName() + ".next.json");
+        this.lockFile = dir.resolveSibling(dir.getFileName() + ".lock");
+        this.url = url;
+        this.ttl = ttl;
+        this.offline = offline;
+    }
+
+    /**
+     * Cache in ~/.aictx configured from AICTX_CONTEXT_URL, AICTX_CONTEXT_TTL and AICTX_OFFLINE.
+     */
+    public static ContextCache fromEnvironment() {
+        String url = System.getenv("AICTX_CONTEXT_URL");
+        String ttl = System.getenv("AICTX_CONTEXT_TTL");
+        String offline = System.getenv("AICTX_OFFLINE");
+        return new ContextCache(VersionUtil.getContextCacheDir(),
+                url != null && !url.isBlank() ? url : DEFAULT_URL,
+                ttl != null ? parseDuration(ttl) : DEFAULT_TTL,
+                offline != null && (offline.equals("1") || offline.equalsIgnoreCase("true")));
+    }
+
+    /**
+     * "90s", "15m", "24h", "7d" or plain seconds.
+     */
+    static Duration parseDuration(String value) {
+        Matcher m = DURATION.matcher(value.trim().toLowerCase(Locale.ROOT));
+        if (!m.matches()) {
+            System.err.println("Warning: invalid AICTX_CONTEXT_TTL '" + value + "', using " + DEFAULT_TTL.toHours() + "h");
+            return DEFAULT_TTL;
+        }
+        long amount = Long.parseLong(m.group(1));
+        switch (m.group(2)) {
+            case "m": return Duration.ofMinutes(amount);
+            case "h": return Duration.ofHours(amount);
+            case "d": return Duration.ofDays(amount);
+            default: return Duration.ofSeconds(amount);
+        }
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    /**
+     * Library directory to use for this run, or null if there is none and it cannot be fetched.
+     * Promotes a staged update first; starts a background revalidation if the library is stale.
+     */
+    public Path resolve() {
+        promoteStaged();
+        Path current = current();
+        if (VersionUtil.isValidContextDir(current)) {
+            if (!offline && isStale()) {
+                revalidateInBackground();
+            }
+            return current;
+        }
+        if (offline) {
+            System.err.println("Offline mode (AICTX_OFFLINE): no cached context library at " + dir);
+            return null;
+        }
+
+        // Nothing to serve yet: the first download has to block
+        try {
+            System.out.println("Context library not found locally. Downloading from " + url + " ...");
+            refresh();
+            System.out.println("Context library cached at " + current());
+            return current();
+        } catch (Exception e) {
+            System.err.println("Failed to download context library: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Download the library now (unconditionally) and swap it in.
+     */
+    public ArchiveDownloader.Result refresh() throws IOException, InterruptedException {
+        if (offline) throw new IOException("offline mode (AICTX_OFFLINE) is set");
+        try (FileChannel channel = lockChannel(); FileLock lock = channel.lock()) {
+            ArchiveDownloader.Result download = stage(Map.of());
+            if (!download.notModified) {
+                promote();
+            }
+            return download;
+        }
+    }
+
+    /**
+     * Directory of the library in use: the version context.json names, else the legacy
+     * context/ directory. Nothing is promoted or downloaded.
+     */
+    public Path current() {
+        Path version = versionDir(readMeta(metaFile));
+        return version != null && VersionUtil.isValidContextDir(version) ? version : dir;
+    }
+
+    /**
+     * Whether root is a library directory managed by this cache (any version).
+     */
+    public boolean holds(Path root) {
+        Path normalized = root.toAbsolutePath().normalize();
+        Path base = dir.toAbsolutePath().normalize();
+        if (normalized.equals(base)) return true;
+        String name = normalized.getFileName() != null ? normalized.getFileName().toString() : "";
+        String prefix = base.getFileName() + "-";
+        return Objects.equals(normalized.getParent(), base.getParent()) && name.startsWith(prefix)
+                && VERSION_ID.matcher(name.substring(prefix.length())).matches();
+    }
+
+    /**
+     * Metadata of the library in use (url, fetchedAt, etag, lastModified); empty if unknown.
+     */
+    public Map<String, Object> metadata() {
+        return readMeta(metaFile);
+    }
+
+    /**
+     * Wait up to maxWait for a running background revalidation, so it is not cut off when
+     * the command exits. Called by main after the command has printed its output.
+     */
+    public static void awaitBackground(Duration maxWait) {
+        Thread thread = background;
+        if (thread == null) return;
+        try {
+            thread.join(maxWait.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A released library version, e.g. "v1.4.0", from ~/.aictx/versions. It is downloaded
+     * from the tag's GitHub archive on first use and never revalidated, since tags do not move.
+     */
+    public static Path version(String tag) throws IOException, InterruptedException {
+        if (!TAG.matcher(tag).matches()) throw new IOException("invalid library version: " + tag);
+        Path versionDir = VersionUtil.getContextCacheDir().resolveSibling("versions").resolve(tag);
+        if (VersionUtil.isValidContextDir(versionDir)) return versionDir;
+        if (fromEnvironment().isOffline()) {
+            throw new IOException("library version " + tag + " is not cached and offline mode (AICTX_OFFLINE) is set");
+        }
+
+        Files.createDirectories(versionDir.getParent());
+        URI archiveUrl = URI.create("https://github.com/" + VersionUtil.GITHUB_REPO + "/archive/refs/tags/" + tag + ".zip");
+        ArchiveDownloader downloader = new ArchiveDownloader(archiveUrl, versionDir.resolveSibling(tag + ".download"));
+        Path staging = Files.createTempDirectory(versionDir.getParent(), tag + ".staging-");
+        try {
+            downloader.download(Map.of());
+            try (InputStream archive = new BufferedInputStream(Files.newInputStream(downloader.spool()))) {
+                extractContext(archive, staging);
+            }
+            if (!VersionUtil.isValidContextDir(staging)) {
+                throw new IOException("archive of " + tag + " has no context/globals directory");
+            }
+            try {
+                Files.move(staging, versionDir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // Another process fetched the same version first; tags are immutable, so keep it
+            }
+        } finally {
+            deleteRecursively(staging);
+            downloader.discard();
+        }
+        return versionDir;
+    }
+
+    // ── Freshness ────────────────────────────────────────────────────────────
+
+    boolean isStale() {
+        Object fetchedAt = readMeta(metaFile).get("fetchedAt");
+        if (!(fetchedAt instanceof Number)) return true;
+        return System.currentTimeMillis() - ((Number) fetchedAt).longValue() >= ttl.toMillis();
+    }
+
+    private synchronized void revalidateInBackground() {
+        if (background != null) return;
+        Thread thread = new Thread(() -> {
+            try (FileChannel channel = lockChannel(); FileLock lock = channel.tryLock()) {
+                // Another process is already revalidating or promoting
+                if (lock == null || !isStale() || Files.exists(nextMetaFile)) return;
+                Map<String, Object> meta = readMeta(metaFile);
+                if (stage(meta).notModified) {
+                    // 304 Not Modified: the cached library is fresh again
+                    meta.put("fetchedAt", System.currentTimeMillis());
+                    writeMeta(metaFile, meta);
+                }
+            } catch (Exception e) {
+                System.err.println("Background context library refresh failed: "
+                        + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            }
+        }, "aictx-context-revalidate");
+        thread.setDaemon(true);
+        background = thread;
+        thread.start();
+    }
+
+    /**
+     * Promote a fully staged version. Skipped if another process holds the lock.
+     */
+    private void promoteStaged() {
+        if (!Files.exists(nextMetaFile)) return;
+        try (FileChannel channel = lockChannel(); FileLock lock = channel.tryLock()) {
+            if (lock == null || !Files.exists(nextMetaFile)) return;
+            Path staged = versionDir(readMeta(nextMetaFile));
+            if (staged != null && VersionUtil.isValidContextDir(staged)) {
+                promote();
+            } else {
+                Files.deleteIfExists(nextMetaFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: could not activate the updated context library: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Make the staged version current by renaming its metadata over context.json; readers see
+     * either the old or the new pointer, never a missing library. Caller holds the lock.
+     */
+    private void promote() throws IOException {
+        Path previous = current();
+        Files.move(nextMetaFile, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!previous.equals(current()) && Files.exists(previous)) {
+            // Start the grace period: runs that resolved the previous version may still read it
+            Files.setLastModifiedTime(previous, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        removeRetired();
+    }
+
+    /**
+     * Delete versions (and leftovers of interrupted stagings) that are neither in use nor staged
+     * and were last changed more than RETIRED_GRACE ago. Caller holds the lock.
+     */
+    private void removeRetired() throws IOException {
+        Path current = current();
+        Path staged = versionDir(readMeta(nextMetaFile));
+        String base = dir.getFileName().toString();
+        long cutoff = System.currentTimeMillis() - RETIRED_GRACE.toMillis();
+        List<Path> candidates;
+        try (Stream<Path> list = Files.list(dir.toAbsolutePath().getParent())) {
+            candidates = list.filter(Files::isDirectory).filter(p -> {
+                String name = p.getFileName().toString();
+                return name.equals(base) || name.startsWith(base + "-") || name.startsWith(base + ".staging-")
+                        || name.equals(base + ".next") || name.startsWith(base + ".old-");
+            }).collect(Collectors.toList());
+        }
+        for (Path candidate : candidates) {
+            if (sameFile(candidate, current) || sameFile(candidate, staged)) continue;
+            try {
+                if (Files.getLastModifiedTime(candidate).toMillis() < cutoff) deleteRecursively(candidate);
+            } catch (IOException e) {
+                // Removed concurrently, or still in use on a platform that forbids deleting it
+            }
+        }
+    }
+
+    private Path versionDir(Map<String, Object> meta) {
+        Object name = meta.get("dir");
+        if (!(name instanceof String)) return null;
+        String prefix = dir.getFileName() + "-";
+        String versionName = (String) name;
+        if (!versionName.startsWith(prefix) || !VERSION_ID.matcher(versionName.substring(prefix.length())).matches()) {
+            return null;
+        }
+        return dir.resolveSibling(versionName);
+    }
+
+    private static boolean sameFile(Path a, Path b) {
+        return b != null && a.toAbsolutePath().normalize().equals(b.toAbsolutePath().normalize());
+    }
+
+    // ── Download ─────────────────────────────────────────────────────────────
+
+    /**
+     * Download into a new context-<id> directory and stage it in context.next.json. Sends
+     * If-None-Match/If-Modified-Since from meta; the result is notModified if the server
+     * answered 304. Caller holds the lock.
+     */
+    private ArchiveDownloader.Result stage(Map<String, Object> meta) throws IOException, InterruptedException {
+        Map<String, String> conditional = new LinkedHashMap<>();
+        if (url.equals(meta.get("url"))) {
+            if (meta.get("etag") instanceof String) conditional.put("If-None-Match", (String) meta.get("etag"));
+            if (meta.get("lastModified") instanceof String) conditional.put("If-Modified-Since", (String) meta.get("lastModified"));
+        }
+
+        // An interrupted download is resumed from context.download on the next attempt
+        Files.createDirectories(dir.getParent());
+        ArchiveDownloader downloader = new ArchiveDownloader(URI.create(url), dir.resolveSibling(dir.getFileName() + ".download"));
+        ArchiveDownloader.Result download = downloader.download(conditional);
+        if (download.notModified) {
+            return download;
+        }
+        downloader.verify(expectedSha256());
+
+        // Extract into a private directory first; a version directory only ever appears complete
+        Path staging = Files.createTempDirectory(dir.getParent(), dir.getFileName() + ".staging-");
+        long id = System.currentTimeMillis();
+        while (Files.exists(dir.resolveSibling(dir.getFileName() + "-" + Long.toHexString(id)))) id++;
+        Path target = dir.resolveSibling(dir.getFileName() + "-" + Long.toHexString(id));
+        try {
+            try (InputStream archive = new BufferedInputStream(Files.newInputStream(downloader.spool()))) {
+                extractContext(archive, staging);
+            }
+            if (!VersionUtil.isValidContextDir(staging)) {
+                throw new IOException("archive from " + url + " has no context/globals directory");
+            }
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteRecursively(staging);
+            downloader.discard();
+        }
+
+        // A version staged earlier but never promoted has no readers
+        Path unpromoted = versionDir(readMeta(nextMetaFile));
+        Map<String, Object> nextMeta = new LinkedHashMap<>();
+        nextMeta.put("dir", target.getFileName().toString());
+        nextMeta.put("url", url);
+        nextMeta.put("fetchedAt", System.currentTimeMillis());
+        if (download.etag != null) nextMeta.put("etag", download.etag);
+        if (download.lastModified != null) nextMeta.put("lastModified", download.lastModified);
+        writeMeta(nextMetaFile, nextMeta);
+        if (unpromoted != null && !sameFile(unpromoted, current())) deleteRecursively(unpromoted);
+        return download;
+    }
+
+    /**
+     * SHA-256 the archive must have: AICTX_CONTEXT_SHA256, else a url + ".sha256" file published
+     * next to a custom AICTX_CONTEXT_URL, else null (GitHub archives publish no checksum).
+     */
+    private String expectedSha256() throws IOException, InterruptedException {
+        String pinned = System.getenv("AICTX_CONTEXT_SHA256");
+        if (pinned != null && !pinned.isBlank()) return pinned.trim();
+        if (url.equals(DEFAULT_URL)) return null;
+        return ArchiveDownloader.publishedSha256(URI.create(url));
+    }
+
+    /**
+     * Extract the context/ directory of a repository archive (e.g. "aictx-cli-main/context/...").
+     */
+    static void extractContext(InputStream archive, Path targetDir) throws IOException {
+        Files.createDirectories(targetDir);
+        try (ZipInputStream zis = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            String contextPrefix = null;
+
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = entry.getName();
+
+                // Detect the context/ prefix from the archive (e.g., "aictx-cli-main/context/")
+                if (contextPrefix == null) {
+                    int slash = name.indexOf('/');
+                    if (slash > 0) {
+                        contextPrefix = name.substring(0, slash + 1) + "context/";
+                    }
+                }
+
+                if (contextPrefix == null || !name.startsWith(contextPrefix)) {
+                    zis.closeEntry();
+                    continue;
+                }
+
+                String relativePath = name.substring(contextPrefix.length());
+                Path outPath = targetDir.resolve(relativePath).normalize();
+                if (relativePath.isEmpty() || !outPath.startsWith(targetDir)) {
+                    zis.closeEntry();
+                    continue;
+                }
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(outPath);
+                } else {
+                    Files.createDirectories(outPath.getParent());
+                    Files.copy(zis, outPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                zis.closeEntry();
+            }
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    private FileChannel lockChannel() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static Map<String, Object> readMeta(Path file) {
+        try {
+            return MAPPER.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, Object>>() {});
+        } catch (IOException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private static void writeMeta(Path file, Map<String, Object> meta) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            MAPPER.writeValue(tmp.toFile(), meta);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
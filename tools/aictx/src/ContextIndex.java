@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Merged view over one or more context library layers (e.g. org, team, local).
+ *
+ * Layers are ordered base-first; a file in a later layer overrides the file with the
+ * same relative path (e.g. "globals/security.md") in earlier layers. MCP catalogs are
+ * merged per server and toolset name. The index is built once, so lookups are a single
+ * hash probe regardless of the number of layers. File contents and parsed packs are cached,
+ * so an index can be shared by many renders (and threads) without rereading the library.
+ */
+public class ContextIndex {
+
+    static final String CATALOG_ID = "mcp/catalog.yaml";
+
+    private final List<Path> layers;
+    private final Map<String, Path> files = new HashMap<>();
+    private final Map<Path, String> contents = new ConcurrentHashMap<>();
+    private final Map<String, PackModel> packs = new ConcurrentHashMap<>();
+    private final Map<String, McpCatalog> catalogSelections = new ConcurrentHashMap<>();
+    private McpCatalog catalog;
+    private String fingerprint;
+
+    private ContextIndex(List<Path> layers) {
+        this.layers = List.copyOf(layers);
+    }
+
+    public static ContextIndex of(Path root) throws IOException {
+        return build(List.of(root));
+    }
+
+    /**
+     * Index all files of the given layers, later layers winning.
+     */
+    public static ContextIndex build(List<Path> layers) throws IOException {
+        ContextIndex index = new ContextIndex(layers);
+        for (Path layer : layers) {
+            try (Stream<Path> walk = Files.walk(layer)) {
+                walk.filter(Files::isRegularFile)
+                        .forEach(file -> index.files.put(toId(layer.relativize(file)), file));
+            }
+        }
+        return index;
+    }
+
+    private static String toId(Path relative) {
+        return relative.toString().replace('\\', '/');
+    }
+
+    /**
+     * Resolve a library file id such as "packs/java/rules.md". Returns null if no layer has it.
+     */
+    public Path resolve(String id) {
+        return files.get(normalizeId(id));
+    }
+
+    public boolean exists(String id) {
+        return files.containsKey(normalizeId(id));
+    }
+
+    static String normalizeId(String id) {
+        String normalized = id.replace('\\', '/');
+        if (normalized.contains("./")) {
+            normalized = toId(Path.of(normalized).normalize());
+        }
+        return normalized;
+    }
+
+    /**
+     * Content of an indexed library file, read once.
+     */
+    public String read(Path file) throws IOException {
+        String content = contents.get(file);
+        if (content == null) {
+            content = Files.readString(file);
+            contents.putIfAbsent(file, content);
+        }
+        return content;
+    }
+
+    /**
+     * Parsed pack.yaml of a pack, or null if no layer has it. Parsed once.
+     */
+    public PackModel pack(String packId) throws IOException {
+        PackModel pack = packs.get(packId);
+        if (pack == null) {
+            Path packYaml = resolve("packs/" + packId + "/pack.yaml");
+            if (packYaml == null) return null;
+            pack = PackModel.load(packYaml);
+            packs.putIfAbsent(packId, pack);
+        }
+        return pack;
+    }
+
+    /**
+     * All indexed file ids.
+     */
+    public Set<String> ids() {
+        return Collections.unmodifiableSet(files.keySet());
+    }
+
+    public List<Path> layers() {
+        return layers;
+    }
+
+    /**
+     * Version identity of the merged library: a digest over every indexed file's id and
+     * content. Independent of where the layers live and of file timestamps, so a re-fetched
+     * or relocated copy of the same library has the same fingerprint. Computed once per index.
+     */
+    public synchronized String fingerprint() throws IOException {
+        if (fingerprint == null) {
+            StringBuilder sb = new StringBuilder();
+            for (String id : new TreeSet<>(files.keySet())) {
+                byte[] content = Files.readAllBytes(files.get(id));
+                sb.append(id).append('\t').append(DriftChecker.hex(DriftChecker.sha256(content))).append('\n');
+            }
+            fingerprint = DriftChecker.hex(DriftChecker.sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Merged MCP catalog of all layers, loaded on first use.
+     */
+    public synchronized McpCatalog catalog() throws IOException {
+        if (catalog == null) {
+            List<McpCatalog> catalogs = new ArrayList<>();
+            for (Path layer : layers) {
+                Path catalogPath = layer.resolve(CATALOG_ID);
+                if (Files.exists(catalogPath)) {
+                    catalogs.add(McpCatalog.load(catalogPath));
+                }
+            }
+            catalog = McpCatalog.merge(catalogs);
+        }
+        return catalog;
+    }
+
+    /**
+     * The part of the merged MCP catalog one config uses: the toolset and the servers it and
+     * explicitServers reference, streamed from the layers without binding the other entries.
+     * Memoized per selection; the full catalog is returned instead once it is loaded.
+     */
+    public McpCatalog catalog(String toolset, List<String> explicitServers) throws IOException {
+        synchronized (this) {
+            if (catalog != null) return catalog;
+        }
+        List<String> servers = explicitServers != null ? explicitServers : List.of();
+        String key = toolset + "\n" + String.join("\n", servers);
+        McpCatalog selected = catalogSelections.get(key);
+        if (selected == null) {
+            List<Path> catalogPaths = new ArrayList<>();
+            for (Path layer : layers) {
+                Path catalogPath = layer.resolve(CATALOG_ID);
+                if (Files.exists(catalogPath)) catalogPaths.add(catalogPath);
+            }
+            selected = McpCatalog.loadSelected(catalogPaths, toolset, servers);
+            McpCatalog existing = catalogSelections.putIfAbsent(key, selected);
+            if (existing != null) selected = existing;
+        }
+        return selected;
+    }
+}
@@ -25,12 +25,21 @@ public class ContextModel {
     @JsonProperty("skills")
     public List<String> skills = new ArrayList<>();
 
+    @JsonProperty("pathRules")
+    public List<String> pathRules = new ArrayList<>();
+
+    @JsonProperty("contextLayers")
+    public List<String> contextLayers = new ArrayList<>();
+
     @JsonProperty("mcp")
     public McpConfig mcp;
 
     @JsonProperty("outputs")
     public OutputConfig outputs;
 
+    @JsonProperty("selection")
+    public SelectionConfig selection;
+
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class McpConfig {
         @JsonProperty("toolset")
@@ -53,17 +62,88 @@ public class ContextModel {
 
         @JsonProperty("vscodeMcp")
         public boolean vscodeMcp = true;
+
+        // Directory-scoped AGENTS.md/CLAUDE.md files derived from path rule applyTo globs
+        @JsonProperty("nestedAgents")
+        public boolean nestedAgents = false;
+
+        // "config" keeps config list order; "stable" emits a canonical, byte-stable layout
+        @JsonProperty("layout")
+        public String layout = "config";
+
+        public boolean stableLayout() {
+            return "stable".equals(layout);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class SelectionConfig {
+        // "static" uses the skills and globals lists; "auto" scores candidates against the repository
+        @JsonProperty("mode")
+        public String mode = "static";
+
+        @JsonProperty("threshold")
+        public double threshold = 0.5;
+
+        public boolean isAuto() {
+            return "auto".equals(mode);
+        }
+    }
+
+    /**
+     * Deep copy, so a model can be changed without affecting the caller's.
+     */
+    public ContextModel copy() {
+        return new ObjectMapper().convertValue(this, ContextModel.class).withDefaults();
     }
 
     public static ContextModel load(Path path) throws IOException {
         ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        ContextModel model = mapper.readValue(path.toFile(), ContextModel.class);
-        if (model.mcp == null) model.mcp = new McpConfig();
-        if (model.outputs == null) model.outputs = new OutputConfig();
-        if (model.packs == null) model.packs = new ArrayList<>();
-        if (model.globals == null) model.globals = new ArrayList<>();
-        if (model.skills == null) model.skills = new ArrayList<>();
-        if (model.mcp.servers == null) model.mcp.servers = new ArrayList<>();
+        ContextModel model = mapper.readValue(path.toFile(), ContextModel.class).withDefaults();
+        model.contextLayers = absoluteLayers(model.contextLayers, path);
         return model;
     }
+
+    /**
+     * Context layers are written relative to the config file that declares them.
+     */
+    static List<String> absoluteLayers(List<String> layers, Path configFile) {
+        Path base = configFile.toAbsolutePath().getParent();
+        List<String> result = new ArrayList<>();
+        for (String layer : layers) {
+            result.add(base.resolve(layer).normalize().toString());
+        }
+        return result;
+    }
+
+    /**
+     * Fill in defaults for sections and lists omitted from the YAML.
+     */
+    ContextModel withDefaults() {
+        if (mcp == null) mcp = new McpConfig();
+        if (outputs == null) outputs = new OutputConfig();
+        if (selection == null) selection = new SelectionConfig();
+        if (packs == null) packs = new ArrayList<>();
+        if (globals == null) globals = new ArrayList<>();
+        if (skills == null) skills = new ArrayList<>();
+        if (pathRules == null) pathRules = new ArrayList<>();
+        if (contextLayers == null) contextLayers = new ArrayList<>();
+        if (mcp.servers == null) mcp.servers = new ArrayList<>();
+        // "!id" entries only carry meaning for path rules (exclusions); elsewhere they
+        // are leftovers of inheritance removals
+        for (List<String> list : List.of(packs, globals, skills, mcp.servers)) {
+            list.removeIf(entry -> entry.startsWith("!"));
+        }
+        return this;
+    }
+
+    /**
+     * Whether a pack path rule is selected: pathRules may list the rule ids to include
+     * (none listed means all) and "!id" entries to exclude.
+     */
+    public boolean selectsPathRule(String ruleId) {
+        if (pathRules.contains("!" + ruleId)) return false;
+        boolean anyIncluded = pathRules.stream().anyMatch(r -> !r.startsWith("!"));
+        return !anyIncluded || pathRules.contains(ruleId);
+    }
 }
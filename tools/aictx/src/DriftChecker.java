@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compares rendered outputs against the files on disk without writing anything.
+ */
+public class DriftChecker {
+
+    public enum Status { UP_TO_DATE, STALE, MISSING, UNMANAGED }
+
+    public static final class Entry {
+        public final String path;
+        public final Status status;
+
+        Entry(String path, Status status) {
+            this.path = path;
+            this.status = status;
+        }
+
+        public boolean isDrift() {
+            return status == Status.STALE || status == Status.MISSING;
+        }
+    }
+
+    // Files at or above this size are hashed through a memory-mapped buffer
+    static final long MMAP_THRESHOLD = 1 << 20;
+
+    private static final byte[] MARKER = Generator.MANAGED_MARKER.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Check every rendered output against outputDir. Files are probed in parallel.
+     */
+    public static List<Entry> check(Path outputDir, Map<String, String> rendered) {
+        return rendered.entrySet().parallelStream()
+                .map(e -> checkFile(outputDir.resolve(e.getKey()), e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    static Entry checkFile(Path file, String relativePath, String content) {
+        if (!Files.isRegularFile(file)) {
+            return new Entry(relativePath, Status.MISSING);
+        }
+        try {
+            byte[] expected = sha256(content.getBytes(StandardCharsets.UTF_8));
+            if (MessageDigest.isEqual(expected, digest(file))) {
+                return new Entry(relativePath, Status.UP_TO_DATE);
+            }
+            // User-owned file: only the managed region has to match
+            RegionSplicer.Region region = RegionSplicer.locate(file);
+            if (region != null) {
+                byte[] expectedRegion = sha256(RegionSplicer.regionContent(content).getBytes(StandardCharsets.UTF_8));
+                boolean current = MessageDigest.isEqual(expectedRegion, digest(file, region.start, region.end - region.start));
+                return new Entry(relativePath, current ? Status.UP_TO_DATE : Status.STALE);
+            }
+            // setup skips files without the marker unless forced
+            return new Entry(relativePath, containsMarker(file) ? Status.STALE : Status.UNMANAGED);
+        } catch (IOException e) {
+            return new Entry(relativePath, Status.STALE);
+        }
+    }
+
+    /**
+     * SHA-256 of a file; large files are read through a memory mapping instead of the heap.
+     */
+    public static byte[] digest(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MMAP_THRESHOLD) {
+                return sha256(Files.readAllBytes(file));
+            }
+            MessageDigest md = newSha256();
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                long length = Math.min(Integer.MAX_VALUE, size - pos);
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, length));
+            }
+            return md.digest();
+        }
+    }
+
+    /**
+     * SHA-256 of a byte range of a file, read through a memory mapping.
+     */
+    static byte[] digest(Path file, long position, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest md = newSha256();
+            for (long done = 0; done < length; done += Integer.MAX_VALUE) {
+                long chunk = Math.min(Integer.MAX_VALUE, length - done);
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY, position + done, chunk));
+            }
+            return md.digest();
+        }
+    }
+
+    static boolean containsMarker(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), Integer.MAX_VALUE);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            outer:
+            for (int i = 0; i + MARKER.length <= size; i++) {
+                for (int j = 0; j < MARKER.length; j++) {
+                    if (buf.get(i + j) != MARKER[j]) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static byte[] sha256(byte[] content) {
+        return newSha256().digest(content);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * YAML frontmatter of markdown library files (skills, path rules).
+ */
+public class Frontmatter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
+    /**
+     * Parse the frontmatter block of a markdown document.
+     * Returns null if there is none; throws if the block is not valid YAML.
+     */
+    public static Map<String, Object> parse(String content) throws IOException {
+        String block = block(content);
+        if (block == null) return null;
+        if (block.isBlank()) return new LinkedHashMap<>();
+        Map<String, Object> values = MAPPER.readValue(block, new TypeReference<LinkedHashMap<String, Object>>() {});
+        return values != null ? values : new LinkedHashMap<>();
+    }
+
+    public static Map<String, Object> read(Path file) throws IOException {
+        return parse(Files.readString(file));
+    }
+
+    /**
+     * Raw text between the opening and closing "---" lines, or null.
+     */
+    static String block(String content) {
+        if (!content.startsWith("---")) return null;
+        int start = content.indexOf('\n');
+        if (start < 0) return null;
+        int end = content.indexOf("\n---", start);
+        if (end < 0) return null;
+        return content.substring(start + 1, end + 1);
+    }
+
+    /**
+     * Document content after the frontmatter block, or the whole content if there is none.
+     */
+    public static String body(String content) {
+        String block = block(content);
+        if (block == null) return content;
+        int close = content.indexOf("\n---", content.indexOf('\n')) + 4;
+        int next = content.indexOf('\n', close);
+        return next < 0 ? "" : content.substring(next + 1);
+    }
+
+    /**
+     * String value of a key, or null if absent or not a scalar.
+     */
+    public static String string(Map<String, Object> frontmatter, String key) {
+        if (frontmatter == null) return null;
+        Object value = frontmatter.get(key);
+        return value instanceof String || value instanceof Number || value instanceof Boolean
+                ? value.toString() : null;
+    }
+
+    /**
+     * List of strings for a key; a scalar is treated as a one-element list.
+     */
+    public static List<String> strings(Map<String, Object> frontmatter, String key) {
+        List<String> result = new ArrayList<>();
+        if (frontmatter == null) return result;
+        Object value = frontmatter.get(key);
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (item != null) result.add(item.toString());
+            }
+        } else if (value != null) {
+            result.add(value.toString());
+        }
+        return result;
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.*;
@@ -8,27 +9,163 @@ import java.util.stream.*;
  */
 public class Generator {
 
-    private final ContextModel ctx;
-    private final Path contextRoot;
+    /** The config; replaced by a copy with the selected skills and globals in auto selection mode. */
+    private ContextModel ctx;
+    private final ContextIndex index;
     private final boolean dryRun;
     private final boolean force;
     private final boolean verbose;
     private final Path outputDir;
     private final List<String> generatedFiles = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private final Set<String> sources = new TreeSet<>();
+    private Map<String, String> outputs;
+    private Map<String, List<Path>> scopedRules;
+    private List<PackModel> packs;
+    private List<ContentSelector.Choice> selection = List.of();
+    private RenderCache renderCache;
+    private boolean diffSummary;
+    private OutputHistory history;
+    private PrintStream out = System.out;
+    private PrintStream err = System.err;
+    private final Map<String, OutputSink.Outcome> results = new LinkedHashMap<>();
 
     // Marker used to identify aictx-managed content
-    private static final String MANAGED_MARKER = "managed-by: aictx";
+    static final String MANAGED_MARKER = "managed-by: aictx";
 
-    public Generator(ContextModel ctx, Path contextRoot, boolean dryRun, boolean force, boolean verbose) {
+    // Stable layout: everything before this line is shared org/pack content
+    static final String STABLE_PREFIX_END = "<!-- aictx:repo-specific -->";
+
+    /**
+     * Size and digest of the part of an output that is identical across repos
+     * with the same org-wide content.
+     */
+    public static final class PrefixDigest {
+        public final int bytes;
+        public final String sha256;
+
+        PrefixDigest(int bytes, String sha256) {
+            this.bytes = bytes;
+            this.sha256 = sha256;
+        }
+    }
+
+    public Generator(ContextModel ctx, Path contextRoot, boolean dryRun, boolean force, boolean verbose) throws IOException {
+        this(ctx, ContextIndex.of(contextRoot), Path.of("."), dryRun, force, verbose); // current working directory
+    }
+
+    /**
+     * @param outputDir repository the outputs belong to; null renders without looking at a
+     *                  repository (no nested AGENTS.md files, no repository features)
+     */
+    public Generator(ContextModel ctx, ContextIndex index, Path outputDir, boolean dryRun, boolean force, boolean verbose) {
         this.ctx = ctx;
-        this.contextRoot = contextRoot;
+        this.index = index;
         this.dryRun = dryRun;
         this.force = force;
         this.verbose = verbose;
-        this.outputDir = Path.of("."); // current working directory
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Reuse rendered outputs from a shared cache when an identical config was rendered before.
+     */
+    public Generator withRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+        return this;
+    }
+
+    /**
+     * In dry-run mode, list changed files with line counts instead of printing diffs.
+     */
+    public Generator withDiffSummary(boolean diffSummary) {
+        this.diffSummary = diffSummary;
+        return this;
+    }
+
+    /**
+     * Snapshot files into a history before generate() replaces them in outputDir.
+     */
+    public Generator withHistory(OutputHistory history) {
+        this.history = history;
+        return this;
+    }
+
+    /**
+     * Send progress and warnings somewhere other than stdout/stderr, e.g. a null stream
+     * when embedded.
+     */
+    public Generator withOutput(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        return this;
     }
 
     public void generate() throws IOException {
+        if (dryRun) {
+            preview(render());
+            return;
+        }
+        generate(new OutputSink.Directory(outputDir, force).withHistory(history));
+    }
+
+    /**
+     * Render and hand every output to a sink.
+     */
+    public void generate(OutputSink sink) throws IOException {
+        for (Map.Entry<String, String> output : render().entrySet()) {
+            writeFile(sink, output.getKey(), output.getValue());
+        }
+    }
+
+    /**
+     * Render all outputs in memory, keyed by path relative to the output directory.
+     * Reads the context library (and, for nested AGENTS.md files, which directories
+     * exist in the output directory); nothing is written.
+     */
+    public Map<String, String> render() throws IOException {
+        if (outputs != null) return outputs;
+
+        if (ctx.selection.isAuto()) {
+            // Resolve the skill and global lists first, so the cache key covers the result
+            Map<String, String> features = outputDir != null ? ContentSelector.scan(outputDir) : Map.of();
+            selection = new ContentSelector(index, features).select(ctx);
+            ctx = ContentSelector.apply(ctx, selection);
+            // Any skill or global added to the library can change the selection
+            sources.add("globals/");
+            sources.add("skills/");
+            for (PackModel pack : loadPacks()) {
+                sources.add("packs/" + pack.id + "/skills/");
+            }
+        }
+
+        String cacheKey = renderCache != null
+                ? RenderCache.key(ctx, index, String.join(",", scopedRules().keySet())) : null;
+        if (cacheKey != null) {
+            RenderCache.Entry cached = renderCache.get(cacheKey);
+            // Entries written before sources were recorded are re-rendered
+            if (cached != null && cached.sources != null) {
+                if (verbose) out.println("  Render cache hit: " + cacheKey.substring(0, 12));
+                // Warnings from computing the key were already reported; replay only the rest
+                List<String> reported = new ArrayList<>(warnings);
+                for (String warning : cached.warnings) {
+                    if (!reported.remove(warning)) warn(warning);
+                }
+                sources.addAll(cached.sources);
+                outputs = cached.files;
+                return outputs;
+            }
+        }
+
+        outputs = new LinkedHashMap<>();
+        renderOutputs();
+        if (cacheKey != null) {
+            renderCache.put(cacheKey, outputs, warnings, sources);
+        }
+        return outputs;
+    }
+
+    private void renderOutputs() throws IOException {
         // 1. Load packs
         List<PackModel> packs = loadPacks();
 
@@ -44,19 +181,21 @@ public class Generator {
 
         // 5. Load MCP info
         McpCatalog catalog = loadMcpCatalog();
-        List<String> serverNames = resolveServerNames(catalog, packs);
+        List<String> serverNames = resolveServerNames(catalog);
+        recordCatalogSources(serverNames);
         String mcpDescription = buildMcpDescription(catalog, serverNames);
 
         // 6. Build skills description
-        String skillsDescription = buildSkillsDescription();
+        String skillsDescription = buildSkillsDescription(packs);
 
-        // 7. Generate AGENTS.md (canonical cross-tool file)
+        // 7. Generate AGENTS.md (canonical cross-tool file) and directory-scoped files
         generateAgentsMd(globalsContent, packRulesContent, repoInstructionsContent,
-                mcpDescription, skillsDescription);
+                mcpDescription, skillsDescription, buildScopedDescription());
+        generateNestedAgentsMd();
 
         // 8. Generate tool-specific outputs
         if (ctx.outputs.copilot) {
-            generateCopilotInstructions();
+            generateCopilotInstructions(packs);
             generateCopilotPathInstructions(packs);
         }
 
@@ -78,19 +217,62 @@ public class Generator {
         }
     }
 
+    /**
+     * Scored skill and global candidates when selection.mode is auto, otherwise empty.
+     */
+    public List<ContentSelector.Choice> getSelection() {
+        return selection;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Library files the outputs were derived from, by id: every file looked up (also those
+     * not found, since adding them would change the outputs), catalog entries as
+     * "mcp/catalog.yaml#servers/NAME" and "#toolsets/NAME", and directories ending in "/"
+     * whose contents auto selection considered. Filled by render(); used by the impact index.
+     */
+    public Set<String> getSources() {
+        return Collections.unmodifiableSet(sources);
+    }
+
+    /**
+     * Look up a library file and record it as a source, whether it exists or not.
+     */
+    private Path resolve(String id) {
+        sources.add(ContextIndex.normalizeId(id));
+        return index.resolve(id);
+    }
+
+    private void warn(String message) {
+        warnings.add(message);
+        err.println("  Warning: " + message);
+    }
+
     // ── Pack Loading ─────────────────────────────────────────────────────────
 
+    /**
+     * Selected packs with the packs they extend, ancestors first and each once, so shared
+     * rules.md and repo-instructions.md content is emitted a single time.
+     */
     private List<PackModel> loadPacks() throws IOException {
-        List<PackModel> packs = new ArrayList<>();
+        if (packs != null) return packs;
+        PackGraph.Closure closure = PackGraph.closure(index, ordered(ctx.packs));
         for (String packId : ctx.packs) {
-            Path packYaml = contextRoot.resolve("packs/" + packId + "/pack.yaml");
-            if (Files.exists(packYaml)) {
-                packs.add(PackModel.load(packYaml));
-                if (verbose) System.out.println("  Loaded pack: " + packId);
-            } else {
-                System.err.println("  Warning: pack not found: " + packId);
+            sources.add("packs/" + packId + "/pack.yaml");
+        }
+        for (PackModel pack : closure.packs) {
+            sources.add("packs/" + pack.id + "/pack.yaml");
+        }
+        closure.problems.forEach(problem -> warn(problem.message));
+        if (verbose) {
+            for (PackModel pack : closure.packs) {
+                out.println("  Loaded pack: " + pack.id + (ctx.packs.contains(pack.id) ? "" : " (inherited)"));
             }
         }
+        packs = closure.packs;
         return packs;
     }
 
@@ -98,13 +280,13 @@ public class Generator {
 
     private String loadGlobals() throws IOException {
         StringBuilder sb = new StringBuilder();
-        for (String globalId : ctx.globals) {
-            Path globalFile = contextRoot.resolve("globals/" + globalId + ".md");
-            if (Files.exists(globalFile)) {
-                sb.append(Files.readString(globalFile)).append("\n\n");
-                if (verbose) System.out.println("  Loaded global: " + globalId);
+        for (String globalId : ordered(ctx.globals)) {
+            Path globalFile = resolve("globals/" + globalId + ".md");
+            if (globalFile != null) {
+                sb.append(index.read(globalFile)).append("\n\n");
+                if (verbose) out.println("  Loaded global: " + globalId);
             } else {
-                System.err.println("  Warning: global not found: " + globalId);
+                warn("global not found: " + globalId);
             }
         }
         return sb.toString().trim();
@@ -115,9 +297,9 @@ public class Generator {
     private String loadPackRules(List<PackModel> packs) throws IOException {
         StringBuilder sb = new StringBuilder();
         for (PackModel pack : packs) {
-            Path rulesFile = contextRoot.resolve("packs/" + pack.id + "/rules.md");
-            if (Files.exists(rulesFile)) {
-                sb.append(Files.readString(rulesFile)).append("\n\n");
+            Path rulesFile = resolve("packs/" + pack.id + "/rules.md");
+            if (rulesFile != null) {
+                sb.append(index.read(rulesFile)).append("\n\n");
             }
         }
         return sb.toString().trim();
@@ -126,9 +308,9 @@ public class Generator {
     private String loadRepoInstructions(List<PackModel> packs) throws IOException {
         StringBuilder sb = new StringBuilder();
         for (PackModel pack : packs) {
-            Path file = contextRoot.resolve("packs/" + pack.id + "/repo-instructions.md");
-            if (Files.exists(file)) {
-                sb.append(Files.readString(file)).append("\n\n");
+            Path file = resolve("packs/" + pack.id + "/repo-instructions.md");
+            if (file != null) {
+                sb.append(index.read(file)).append("\n\n");
             }
         }
         return sb.toString().trim();
@@ -139,15 +321,15 @@ public class Generator {
     private String loadSkills(List<PackModel> packs) throws IOException {
         StringBuilder sb = new StringBuilder();
         Set<String> loaded = new HashSet<>();
-        for (String skillId : ctx.skills) {
+        for (String skillId : ordered(ctx.skills)) {
             if (loaded.contains(skillId)) continue;
             Path skillFile = findSkillFile(skillId, packs);
-            if (skillFile != null && Files.exists(skillFile)) {
-                sb.append(Files.readString(skillFile)).append("\n\n");
+            if (skillFile != null) {
+                sb.append(index.read(skillFile)).append("\n\n");
                 loaded.add(skillId);
-                if (verbose) System.out.println("  Loaded skill: " + skillId);
+                if (verbose) out.println("  Loaded skill: " + skillId);
             } else {
-                System.err.println("  Warning: skill not found: " + skillId);
+                warn("skill not found: " + skillId);
             }
         }
         return sb.toString().trim();
@@ -155,28 +337,28 @@ public class Generator {
 
     private Path findSkillFile(String skillId, List<PackModel> packs) {
         // Check global skills first
-        Path global = contextRoot.resolve("skills/" + skillId + ".skill.md");
-        if (Files.exists(global)) return global;
+        Path global = resolve("skills/" + skillId + ".skill.md");
+        if (global != null) return global;
 
         // Check pack skills
         for (PackModel pack : packs) {
-            Path packSkill = contextRoot.resolve("packs/" + pack.id + "/skills/" + skillId + ".skill.md");
-            if (Files.exists(packSkill)) return packSkill;
+            Path packSkill = resolve("packs/" + pack.id + "/skills/" + skillId + ".skill.md");
+            if (packSkill != null) return packSkill;
         }
 
         return null;
     }
 
-    private String buildSkillsDescription() {
+    private String buildSkillsDescription(List<PackModel> packs) {
         if (ctx.skills.isEmpty()) return "";
 
         StringBuilder sb = new StringBuilder();
         sb.append("## Available Skills\n\n");
         sb.append("The following skills are available. Use them when the situation matches:\n\n");
-        for (String skillId : ctx.skills) {
+        for (String skillId : ordered(ctx.skills)) {
             sb.append("- **").append(skillId).append("**");
             // Try to read the skill's whenToUse from frontmatter
-            String whenToUse = readSkillWhenToUse(skillId);
+            String whenToUse = readSkillWhenToUse(skillId, packs);
             if (whenToUse != null) {
                 sb.append(": ").append(whenToUse);
             }
@@ -185,24 +367,11 @@ public class Generator {
         return sb.toString();
     }
 
-    private String readSkillWhenToUse(String skillId) {
+    private String readSkillWhenToUse(String skillId, List<PackModel> packs) {
         try {
-            Path skillFile = findSkillFile(skillId, loadPacks());
+            Path skillFile = findSkillFile(skillId, packs);
             if (skillFile == null) return null;
-            String content = Files.readString(skillFile);
-            // Simple frontmatter parsing
-            if (content.startsWith("---")) {
-                int end = content.indexOf("---", 3);
-                if (end > 0) {
-                    String frontmatter = content.substring(3, end);
-                    for (String line : frontmatter.split("\n")) {
-                        line = line.trim();
-                        if (line.startsWith("whenToUse:")) {
-                            return line.substring("whenToUse:".length()).trim();
-                        }
-                    }
-                }
-            }
+            return Frontmatter.string(Frontmatter.parse(index.read(skillFile)), "whenToUse");
         } catch (Exception ignored) {
         }
         return null;
@@ -211,25 +380,47 @@ public class Generator {
     // ── MCP ──────────────────────────────────────────────────────────────────
 
     private McpCatalog loadMcpCatalog() throws IOException {
-        Path catalogPath = contextRoot.resolve("mcp/catalog.yaml");
-        if (Files.exists(catalogPath)) {
-            return McpCatalog.load(catalogPath);
+        // Only the toolset and servers this config uses are read from the catalog
+        return index.catalog(mcpToolset(), ctx.mcp.servers);
+    }
+
+    /**
+     * MCP servers the outputs configure: the config's toolset (or the first pack default)
+     * plus explicitly listed servers.
+     */
+    public List<String> mcpServerNames() throws IOException {
+        return resolveServerNames(loadMcpCatalog());
+    }
+
+    /**
+     * Catalog entries this config uses (its toolset and servers).
+     */
+    public McpCatalog mcpCatalog() throws IOException {
+        return loadMcpCatalog();
+    }
+
+    private List<String> resolveServerNames(McpCatalog catalog) throws IOException {
+        return ordered(catalog.resolveServerNames(mcpToolset(), ctx.mcp.servers));
+    }
+
+    private void recordCatalogSources(List<String> serverNames) throws IOException {
+        String toolset = mcpToolset();
+        if (toolset != null) sources.add(ContextIndex.CATALOG_ID + "#toolsets/" + toolset);
+        for (String name : serverNames) {
+            sources.add(ContextIndex.CATALOG_ID + "#servers/" + name);
         }
-        return new McpCatalog();
     }
 
-    private List<String> resolveServerNames(McpCatalog catalog, List<PackModel> packs) {
-        String toolset = ctx.mcp.toolset;
-        // If no toolset specified, try to use pack default
-        if (toolset == null) {
-            for (PackModel pack : packs) {
-                if (pack.defaultMcpToolset != null) {
-                    toolset = pack.defaultMcpToolset;
-                    break;
-                }
+    private String mcpToolset() throws IOException {
+        if (ctx.mcp.toolset != null) return ctx.mcp.toolset;
+        // If no toolset specified, try to use pack default (a pack's own, else its nearest ancestor's)
+        for (String packId : ordered(ctx.packs)) {
+            PackModel pack = PackGraph.resolve(index, packId);
+            if (pack != null && pack.defaultMcpToolset != null) {
+                return pack.defaultMcpToolset;
             }
         }
-        return catalog.resolveServerNames(toolset, ctx.mcp.servers);
+        return null;
     }
 
     private String buildMcpDescription(McpCatalog catalog, List<String> serverNames) {
@@ -254,12 +445,28 @@ public class Generator {
 
     private void generateAgentsMd(String globals, String packRules,
                                    String repoInstructions, String mcpDesc,
-                                   String skillsDesc) throws IOException {
+                                   String skillsDesc, String scopedDesc) throws IOException {
         StringBuilder sb = new StringBuilder();
         sb.append("<!-- ").append(MANAGED_MARKER).append(" -->\n");
         sb.append("# Project Instructions\n\n");
         sb.append("This file is auto-generated by `aictx setup`. Do not edit managed sections manually.\n\n");
 
+        if (ctx.outputs.stableLayout()) {
+            // Most widely shared content first, so repos with the same globals and packs
+            // produce a byte-identical prefix
+            appendSection(sb, globals);
+            appendSection(sb, packRules);
+            appendSection(sb, mcpDesc);
+            appendSection(sb, skillsDesc);
+            sb.append(STABLE_PREFIX_END).append("\n\n");
+            if (!repoInstructions.isEmpty()) {
+                sb.append(repoInstructions).append("\n\n");
+            }
+            appendSection(sb, scopedDesc);
+            emit("AGENTS.md", sb.toString());
+            return;
+        }
+
         if (!repoInstructions.isEmpty()) {
             sb.append(repoInstructions).append("\n\n");
         }
@@ -283,12 +490,116 @@ public class Generator {
             sb.append(skillsDesc).append("\n");
         }
 
-        writeFile("AGENTS.md", sb.toString());
+        if (!scopedDesc.isEmpty()) {
+            sb.append("---\n\n");
+            sb.append(scopedDesc).append("\n");
+        }
+
+        emit("AGENTS.md", sb.toString());
+    }
+
+    private static void appendSection(StringBuilder sb, String section) {
+        if (section.isEmpty()) return;
+        sb.append("---\n\n");
+        sb.append(section.trim()).append("\n\n");
+    }
+
+    // ── Nested AGENTS.md ─────────────────────────────────────────────────────
+
+    /**
+     * Selected path rules by the directories they are scoped to: the literal prefix of each
+     * applyTo glob, kept only if that directory exists. Globs that start with a wildcard
+     * apply anywhere and have no directory. Empty unless outputs.nestedAgents is set.
+     */
+    private Map<String, List<Path>> scopedRules() throws IOException {
+        if (scopedRules != null) return scopedRules;
+        scopedRules = new TreeMap<>();
+        if (!ctx.outputs.nestedAgents || outputDir == null) return scopedRules;
+
+        for (PackModel pack : loadPacks()) {
+            for (String pathRule : pack.pathRules) {
+                if (!ctx.selectsPathRule(PackModel.pathRuleId(pathRule))) continue;
+                Path ruleFile = resolve("packs/" + pack.id + "/" + pathRule);
+                if (ruleFile == null) continue;
+                for (String dir : scopeDirs(Frontmatter.parse(index.read(ruleFile)))) {
+                    if (!Files.isDirectory(outputDir.resolve(dir))) continue;
+                    List<Path> rules = scopedRules.computeIfAbsent(dir, k -> new ArrayList<>());
+                    if (!rules.contains(ruleFile)) rules.add(ruleFile);
+                }
+            }
+        }
+        return scopedRules;
+    }
+
+    /**
+     * Directories a path rule gets a nested AGENTS.md in: its agentsDir frontmatter entries if
+     * it has any, else the literal prefixes of its applyTo globs. Derived prefixes inside
+     * resources directories are skipped, since files there end up in the built artifact.
+     */
+    static Set<String> scopeDirs(Map<String, Object> frontmatter) {
+        Set<String> dirs = new LinkedHashSet<>();
+        List<String> explicit = Frontmatter.strings(frontmatter, "agentsDir");
+        if (!explicit.isEmpty()) {
+            for (String dir : explicit) {
+                String normalized = Path.of(dir.trim()).normalize().toString().replace('\\', '/');
+                // Directories of the repository only, not the root or anything outside it
+                if (normalized.isEmpty() || normalized.startsWith("/") || normalized.startsWith("..")) continue;
+                dirs.add(normalized);
+            }
+            return dirs;
+        }
+        for (String applyTo : Frontmatter.strings(frontmatter, "applyTo")) {
+            for (String glob : PathRuleMatcher.splitApplyTo(applyTo)) {
+                for (String expanded : PathRuleMatcher.expandBraces(glob)) {
+                    String dir = PathRuleMatcher.literalPrefix(expanded);
+                    if (!dir.isEmpty() && !Arrays.asList(dir.split("/")).contains("resources")) dirs.add(dir);
+                }
+            }
+        }
+        return dirs;
+    }
+
+    private String buildScopedDescription() throws IOException {
+        if (scopedRules().isEmpty()) return "";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("## Scoped Instructions\n\n");
+        sb.append("Additional rules apply when working in these directories:\n\n");
+        for (Map.Entry<String, List<Path>> scoped : scopedRules().entrySet()) {
+            String file = scoped.getKey() + "/AGENTS.md";
+            String ruleIds = scoped.getValue().stream()
+                    .map(rule -> PackModel.pathRuleId(rule.getFileName().toString()))
+                    .collect(Collectors.joining(", "));
+            sb.append("- `").append(scoped.getKey()).append("/`: ").append(ruleIds)
+                    .append(" ([").append(file).append("](").append(file).append("))\n");
+        }
+        return sb.toString();
+    }
+
+    private void generateNestedAgentsMd() throws IOException {
+        for (Map.Entry<String, List<Path>> scoped : scopedRules().entrySet()) {
+            String dir = scoped.getKey();
+            String depth = "../".repeat(dir.split("/").length);
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("<!-- ").append(MANAGED_MARKER).append(" -->\n");
+            sb.append("# Instructions for `").append(dir).append("/`\n\n");
+            sb.append("These rules apply in addition to the root [AGENTS.md](").append(depth).append("AGENTS.md).\n\n");
+            for (Path rule : scoped.getValue()) {
+                sb.append(Frontmatter.body(index.read(rule)).trim()).append("\n\n");
+            }
+            emit(dir + "/AGENTS.md", sb.toString().trim() + "\n");
+
+            if (ctx.outputs.claude) {
+                emit(dir + "/CLAUDE.md", "<!-- " + MANAGED_MARKER + " -->\n"
+                        + "Read and follow [AGENTS.md](AGENTS.md) when working in this directory.\n");
+            }
+        }
     }
 
     // ── Copilot ──────────────────────────────────────────────────────────────
 
-    private void generateCopilotInstructions() throws IOException {
+    private void generateCopilotInstructions(List<PackModel> packs) throws IOException {
         StringBuilder sb = new StringBuilder();
         sb.append("<!-- ").append(MANAGED_MARKER).append(" -->\n");
         sb.append("# Copilot Instructions\n\n");
@@ -296,10 +607,10 @@ public class Generator {
         sb.append("## Key Constraints\n\n");
 
         // Include the most critical rules inline
-        for (String packId : ctx.packs) {
-            Path rulesFile = contextRoot.resolve("packs/" + packId + "/rules.md");
-            if (Files.exists(rulesFile)) {
-                String rules = Files.readString(rulesFile);
+        for (PackModel pack : packs) {
+            Path rulesFile = resolve("packs/" + pack.id + "/rules.md");
+            if (rulesFile != null) {
+                String rules = index.read(rulesFile);
                 // Extract just the first section's bullet points for a concise summary
                 String[] lines = rules.split("\n");
                 int count = 0;
@@ -315,20 +626,21 @@ public class Generator {
         sb.append("\n## MCP Tools & Skills\n\n");
         sb.append("See AGENTS.md for the full list of available MCP servers and skills.\n");
 
-        ensureDir(".github");
-        writeFile(".github/copilot-instructions.md", sb.toString());
+        emit(".github/copilot-instructions.md", sb.toString());
     }
 
     private void generateCopilotPathInstructions(List<PackModel> packs) throws IOException {
-        ensureDir(".github/instructions");
-
         for (PackModel pack : packs) {
             for (String pathRule : pack.pathRules) {
-                Path ruleFile = contextRoot.resolve("packs/" + pack.id + "/" + pathRule);
-                if (Files.exists(ruleFile)) {
-                    String content = Files.readString(ruleFile);
+                // An explicit pathRules selection in the config narrows the pack's rules
+                if (!ctx.selectsPathRule(PackModel.pathRuleId(pathRule))) {
+                    continue;
+                }
+                Path ruleFile = resolve("packs/" + pack.id + "/" + pathRule);
+                if (ruleFile != null) {
+                    String content = index.read(ruleFile);
                     String filename = Path.of(pathRule).getFileName().toString();
-                    writeFile(".github/instructions/" + filename, content);
+                    emit(".github/instructions/" + filename, content);
                 }
             }
         }
@@ -343,7 +655,7 @@ public class Generator {
         sb.append("Read and follow [AGENTS.md](AGENTS.md) for all project rules, conventions, and instructions.\n\n");
 
         // Pack-specific notes
-        for (String packId : ctx.packs) {
+        for (String packId : ordered(ctx.packs)) {
             if ("java".equals(packId)) {
                 sb.append("## Java Service Notes\n\n");
                 sb.append("- Build: `./gradlew build` or `./mvnw package`\n");
@@ -361,7 +673,7 @@ public class Generator {
         sb.append("## MCP Servers\n\n");
         sb.append("MCP servers are configured in `.mcp.json`. See AGENTS.md for when to use each server.\n");
 
-        writeFile("CLAUDE.md", sb.toString());
+        emit("CLAUDE.md", sb.toString());
     }
 
     private void generateClaudeMcp(McpCatalog catalog, List<String> serverNames) throws IOException {
@@ -394,14 +706,12 @@ public class Generator {
         sb.append("  }\n");
         sb.append("}\n");
 
-        writeFile(".mcp.json", sb.toString());
+        emit(".mcp.json", sb.toString());
     }
 
     // ── VS Code MCP ──────────────────────────────────────────────────────────
 
     private void generateVscodeMcp(McpCatalog catalog, List<String> serverNames) throws IOException {
-        ensureDir(".vscode");
-
         StringBuilder sb = new StringBuilder();
         sb.append("{\n");
         sb.append("  \"servers\": {\n");
@@ -431,14 +741,12 @@ public class Generator {
         sb.append("  }\n");
         sb.append("}\n");
 
-        writeFile(".vscode/mcp.json", sb.toString());
+        emit(".vscode/mcp.json", sb.toString());
     }
 
     // ── Codex ────────────────────────────────────────────────────────────────
 
     private void generateCodexConfig(McpCatalog catalog, List<String> serverNames) throws IOException {
-        ensureDir(".codex");
-
         StringBuilder sb = new StringBuilder();
         sb.append("# Codex configuration\n");
         sb.append("# ").append(MANAGED_MARKER).append("\n\n");
@@ -455,48 +763,161 @@ public class Generator {
 
         sb.append("\n# See AGENTS.md for project instructions and conventions.\n");
 
-        writeFile(".codex/config.toml", sb.toString());
+        emit(".codex/config.toml", sb.toString());
     }
 
     // ── File I/O ─────────────────────────────────────────────────────────────
 
-    private void writeFile(String relativePath, String content) throws IOException {
-        Path target = outputDir.resolve(relativePath);
+    private void emit(String relativePath, String content) {
+        boolean markdown = relativePath.endsWith(".md");
+        outputs.put(relativePath, ctx.outputs.stableLayout() && markdown ? normalize(content) : content);
+    }
 
-        if (dryRun) {
-            generatedFiles.add("[dry-run] " + relativePath);
-            if (verbose) {
-                System.out.println("  Would write: " + relativePath + " (" + content.length() + " bytes)");
-            }
-            return;
-        }
+    private List<String> ordered(List<String> ids) {
+        if (!ctx.outputs.stableLayout()) return ids;
+        return ids.stream().distinct().sorted().collect(Collectors.toList());
+    }
 
-        // Check if file exists and is not managed by aictx
-        if (Files.exists(target) && !force) {
-            String existing = Files.readString(target);
-            if (!existing.contains(MANAGED_MARKER)) {
-                System.err.println("  Skipped (not managed by aictx, use --force): " + relativePath);
-                return;
+    /**
+     * LF line endings, no trailing whitespace, no runs of blank lines, exactly one final newline.
+     * Fenced code blocks are kept as they are, and so are Markdown hard line breaks (two or
+     * more trailing spaces).
+     */
+    static String normalize(String content) {
+        StringBuilder sb = new StringBuilder(content.length());
+        int blankRun = 0;
+        String fence = null;
+        String[] lines = content.replace("\r\n", "\n").replace('\r', '\n').split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String marker = fenceMarker(line);
+            if (fence != null) {
+                sb.append(line).append('\n');
+                if (marker != null && marker.charAt(0) == fence.charAt(0) && marker.length() >= fence.length()
+                        && line.strip().length() == marker.length()) {
+                    fence = null;
+                }
+                blankRun = 0;
+                continue;
             }
-        }
+            fence = marker;
+            String stripped = line.stripTrailing();
+            blankRun = stripped.isEmpty() ? blankRun + 1 : 0;
+            if (blankRun > 1) continue;
+            // Two trailing spaces before another paragraph line are a hard line break
+            boolean hardBreak = line.endsWith("  ") && !stripped.isEmpty() && !stripped.stripLeading().startsWith("#")
+                    && i + 1 < lines.length && !lines[i + 1].isBlank();
+            sb.append(hardBreak ? line : stripped).append('\n');
+        }
+        int start = 0;
+        int end = sb.length();
+        while (start < end && sb.charAt(start) == '\n') start++;
+        while (end > start && sb.charAt(end - 1) == '\n') end--;
+        return start == end ? "" : sb.substring(start, end) + "\n";
+    }
 
-        Files.writeString(target, content);
-        generatedFiles.add(relativePath);
-        if (verbose) {
-            System.out.println("  Wrote: " + relativePath);
+    /**
+     * The ``` or ~~~ run opening or closing a fenced code block on this line, or null.
+     */
+    private static String fenceMarker(String line) {
+        int indent = 0;
+        while (indent < line.length() && indent < 4 && line.charAt(indent) == ' ') indent++;
+        if (indent > 3 || indent == line.length()) return null;
+        char c = line.charAt(indent);
+        if (c != '`' && c != '~') return null;
+        int end = indent;
+        while (end < line.length() && line.charAt(end) == c) end++;
+        return end - indent >= 3 ? line.substring(indent, end) : null;
+    }
+
+    /**
+     * Stable prefix of each rendered output: the part before the repo-specific marker,
+     * or the whole output when it has none.
+     */
+    public Map<String, PrefixDigest> stablePrefixes() throws IOException {
+        Map<String, PrefixDigest> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> output : render().entrySet()) {
+            String content = output.getValue();
+            int end = content.indexOf(STABLE_PREFIX_END);
+            byte[] prefix = (end >= 0 ? content.substring(0, end) : content).getBytes(StandardCharsets.UTF_8);
+            result.put(output.getKey(), new PrefixDigest(prefix.length, DriftChecker.hex(DriftChecker.sha256(prefix))));
+        }
+        return result;
+    }
+
+    private void writeFile(OutputSink sink, String relativePath, String content) throws IOException {
+        OutputSink.Outcome outcome = sink.write(relativePath, content);
+        results.put(relativePath, outcome);
+        switch (outcome) {
+            case REGION:
+                generatedFiles.add(relativePath + " (managed region)");
+                if (verbose) out.println("  Updated managed region: " + relativePath);
+                break;
+            case SKIPPED:
+                err.println("  Skipped (not managed by aictx, use --force): " + relativePath);
+                break;
+            case UNCHANGED:
+                generatedFiles.add(relativePath + " (unchanged)");
+                if (verbose) out.println("  Unchanged: " + relativePath);
+                break;
+            default:
+                generatedFiles.add(relativePath);
+                if (verbose) out.println("  Wrote: " + relativePath);
         }
     }
 
-    private void ensureDir(String relativePath) throws IOException {
-        Path dir = outputDir.resolve(relativePath);
-        if (!dryRun) {
-            Files.createDirectories(dir);
+    /**
+     * Outcome of every output handed to a sink by the last generate call; for a dry run,
+     * the outcome writing it would have.
+     */
+    public Map<String, OutputSink.Outcome> getResults() {
+        return results;
+    }
+
+    /**
+     * Print a unified diff per output against the files on disk. Files whose digest already
+     * matches are reported as unchanged without being read or diffed.
+     */
+    private void preview(Map<String, String> rendered) throws IOException {
+        for (DriftChecker.Entry entry : DriftChecker.check(outputDir, rendered)) {
+            String relativePath = entry.path;
+            if (entry.status == DriftChecker.Status.UP_TO_DATE) {
+                results.put(relativePath, OutputSink.Outcome.UNCHANGED);
+                generatedFiles.add("[dry-run] " + relativePath + " (unchanged)");
+                continue;
+            }
+            if (entry.status == DriftChecker.Status.UNMANAGED && !force) {
+                results.put(relativePath, OutputSink.Outcome.SKIPPED);
+                generatedFiles.add("[dry-run] " + relativePath + " (skipped, not managed by aictx)");
+                continue;
+            }
+
+            Path target = outputDir.resolve(relativePath);
+            boolean missing = entry.status == DriftChecker.Status.MISSING;
+            byte[] bytes = missing ? new byte[0] : Files.readAllBytes(target);
+            String before = new String(bytes, StandardCharsets.UTF_8);
+            String after = rendered.get(relativePath);
+            RegionSplicer.Region region = missing ? null : RegionSplicer.locate(target);
+            results.put(relativePath, region != null ? OutputSink.Outcome.REGION : OutputSink.Outcome.WRITTEN);
+            if (region != null) {
+                // Only the managed region would be replaced; diff the file as it would end up
+                after = new String(bytes, 0, (int) region.start, StandardCharsets.UTF_8)
+                        + RegionSplicer.regionContent(after)
+                        + new String(bytes, (int) region.end, bytes.length - (int) region.end, StandardCharsets.UTF_8);
+            }
+
+            UnifiedDiff diff = UnifiedDiff.of(before, after);
+            generatedFiles.add("[dry-run] " + relativePath + " (" + (missing ? "new, " : "")
+                    + "+" + diff.added() + " -" + diff.removed() + ")");
+            if (!diffSummary) {
+                out.print(diff.format(relativePath));
+            }
         }
     }
 
     public void printSummary() {
         for (String file : generatedFiles) {
-            System.out.println("  " + file);
+            out.println("  " + file);
         }
     }
 
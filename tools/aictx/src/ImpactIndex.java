@@ -0,0 +1,337 @@
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Reverse dependencies from context library files to repository configs (aictx impact).
+ *
+ * setup (except with --dry-run) and check --record-impact record, for every config they
+ * render, the library files its outputs were derived from (Generator#getSources). A query
+ * inverts the index once and returns the configs that depend on a set of changed files, so a
+ * library change reruns setup only where outputs can change. The index lives in
+ * ~/.aictx/impact.json (AICTX_IMPACT_INDEX overrides it); updates hold impact.json.lock and
+ * replace the file with an atomic rename, so readers never need the lock.
+ */
+public class ImpactIndex {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final List<String> LIBRARY_ROOTS = List.of("globals/", "packs/", "skills/", "mcp/");
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Record {
+        @JsonProperty("config")
+        public String config;
+
+        @JsonProperty("module")
+        public String module;
+
+        @JsonProperty("layers")
+        public List<String> layers = new ArrayList<>();
+
+        @JsonProperty("libraryFingerprint")
+        public String libraryFingerprint;
+
+        @JsonProperty("recordedAt")
+        public String recordedAt;
+
+        @JsonProperty("sources")
+        public List<String> sources = new ArrayList<>();
+    }
+
+    /** Summary of a recorded config, enough to report it without its sources. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        @JsonProperty("config")
+        public String config;
+
+        @JsonProperty("module")
+        public String module;
+
+        @JsonProperty("layers")
+        public List<String> layers = new ArrayList<>();
+
+        @JsonProperty("recordedAt")
+        public String recordedAt;
+    }
+
+    /**
+     * On-disk layout: a query reads the layers, the inverted sources map and the matched
+     * entries, then stops; configs holds the full records and is only read to update the index.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonPropertyOrder({"layers", "sources", "entries", "configs"})
+    static class Data {
+        /** Every library layer some config was rendered with. */
+        @JsonProperty("layers")
+        public Set<String> layers = new TreeSet<>();
+
+        /** Source id to positions in entries. */
+        @JsonProperty("sources")
+        public Map<String, List<Integer>> sources = new TreeMap<>();
+
+        @JsonProperty("entries")
+        public List<Entry> entries = new ArrayList<>();
+
+        @JsonProperty("configs")
+        public Map<String, Record> configs = new TreeMap<>();
+    }
+
+    /** A config affected by a change, with the changed files it depends on. */
+    public static final class Match {
+        public final Entry entry;
+        public final Set<String> changes = new TreeSet<>();
+
+        Match(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    public static final class Impact {
+        public final List<Match> affected;
+        /** Number of configs in the index. */
+        public final int recorded;
+
+        Impact(List<Match> affected, int recorded) {
+            this.affected = affected;
+            this.recorded = recorded;
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+
+    public ImpactIndex(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Index at AICTX_IMPACT_INDEX, else ~/.aictx/impact.json.
+     */
+    public static ImpactIndex defaultIndex() {
+        String path = System.getenv("AICTX_IMPACT_INDEX");
+        if (path != null && !path.isBlank()) return new ImpactIndex(Path.of(path.trim()));
+        return new ImpactIndex(Path.of(System.getProperty("user.home"), ".aictx", "impact.json"));
+    }
+
+    /**
+     * What a rendered config depends on. Call after the generator has rendered.
+     */
+    public static Record record(Path config, Path moduleDir, ContextIndex index, Generator gen) throws IOException {
+        Record record = new Record();
+        record.config = config.toAbsolutePath().normalize().toString();
+        record.module = moduleDir.toAbsolutePath().normalize().toString();
+        for (Path layer : index.layers()) {
+            record.layers.add(layer.toAbsolutePath().normalize().toString());
+        }
+        record.libraryFingerprint = index.fingerprint();
+        record.recordedAt = Instant.now().toString();
+        record.sources = new ArrayList<>(gen.getSources());
+        return record;
+    }
+
+    /**
+     * Add records to the default index. Failures only warn: the index is an aid, setup and
+     * check do not depend on it.
+     */
+    public static void save(List<Record> records) {
+        if (records.isEmpty()) return;
+        try {
+            defaultIndex().update(records);
+        } catch (IOException e) {
+            System.err.println("Warning: could not update the impact index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the entries of the given configs.
+     */
+    public void update(List<Record> records) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            Data data;
+            try {
+                data = read();
+            } catch (IOException e) {
+                // Unreadable index: start over, setup and check runs fill it again
+                data = new Data();
+            }
+            for (Record record : records) {
+                data.configs.put(record.config, record);
+            }
+            data.layers.clear();
+            data.entries.clear();
+            data.sources.clear();
+            for (Record record : data.configs.values()) {
+                data.layers.addAll(record.layers);
+                Entry entry = new Entry();
+                entry.config = record.config;
+                entry.module = record.module;
+                entry.layers = record.layers;
+                entry.recordedAt = record.recordedAt;
+                for (String source : record.sources) {
+                    data.sources.computeIfAbsent(source, k -> new ArrayList<>()).add(data.entries.size());
+                }
+                data.entries.add(entry);
+            }
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                MAPPER.writeValue(tmp.toFile(), data);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(file);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    // ── Queries ──────────────────────────────────────────────────────────────
+
+    /**
+     * Configs whose outputs depend on any of the changed files. A change is a library file
+     * id ("globals/security.md"), a path to a file in a recorded library layer, or a path in
+     * a checkout of the library repository ("context/globals/security.md"). A directory
+     * matches everything below it; "mcp/catalog.yaml" matches every catalog entry, while
+     * "mcp/catalog.yaml#servers/NAME" matches only configs using that server.
+     *
+     * The index is streamed: only entries and the source lists that match are read, the
+     * full records are not parsed at all.
+     */
+    public Impact affected(Collection<String> changedFiles) throws IOException {
+        if (!Files.isRegularFile(file)) return new Impact(List.of(), 0);
+        Set<String> layers = new TreeSet<>();
+        // Position in entries to the changes that config's sources match
+        Map<Integer, Set<Change>> hits = new HashMap<>();
+        Map<String, Match> matches = new TreeMap<>();
+        int recorded = 0;
+
+        try (JsonParser parser = MAPPER.getFactory().createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return new Impact(List.of(), 0);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("layers")) {
+                    layers = MAPPER.readValue(parser, new TypeReference<TreeSet<String>>() {});
+                } else if (field.equals("sources")) {
+                    List<Change> changes = changes(changedFiles, layers);
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String source = parser.currentName();
+                        parser.nextToken();
+                        List<Change> matching = new ArrayList<>();
+                        for (Change change : changes) {
+                            if (change.matches(source)) matching.add(change);
+                        }
+                        if (matching.isEmpty()) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        while (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                            hits.computeIfAbsent(parser.getIntValue(), k -> new LinkedHashSet<>()).addAll(matching);
+                        }
+                    }
+                } else if (field.equals("entries")) {
+                    // Only the entries of affected configs are bound
+                    for (JsonToken token = parser.nextToken(); token == JsonToken.START_OBJECT; token = parser.nextToken()) {
+                        Set<Change> matching = hits.get(recorded++);
+                        if (matching == null) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        Entry entry = MAPPER.readValue(parser, Entry.class);
+                        for (Change change : matching) {
+                            if (change.layer != null && !entry.layers.contains(change.layer)) continue;
+                            matches.computeIfAbsent(entry.config, k -> new Match(entry)).changes.add(change.changed);
+                        }
+                    }
+                } else if (field.equals("configs")) {
+                    // Full records follow; a query needs nothing from them
+                    break;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Impact(new ArrayList<>(matches.values()), recorded);
+    }
+
+    /** A changed file as a library id, optionally restricted to configs using one layer. */
+    private static final class Change {
+        final String changed;
+        final String id;
+        final String layer;
+
+        Change(String changed, String id, String layer) {
+            this.changed = changed;
+            this.id = id;
+            this.layer = layer;
+        }
+
+        /**
+         * Whether a config with this source depends on the change: the same file, a source
+         * below it (in a directory, or an entry of a catalog file) or a directory above it.
+         */
+        boolean matches(String source) {
+            if (id.isEmpty() || source.equals(id)) return true;
+            String below = id.endsWith("/") ? id : id + "/";
+            if (source.startsWith(below) || source.startsWith(id + "#")) return true;
+            return source.endsWith("/") && id.startsWith(source);
+        }
+    }
+
+    private static List<Change> changes(Collection<String> changedFiles, Set<String> layers) {
+        List<Change> changes = new ArrayList<>();
+        for (String changed : changedFiles) {
+            Path path = Path.of(changed).toAbsolutePath().normalize();
+            String layer = null;
+            for (String candidate : layers) {
+                // The innermost layer wins when layers are nested
+                if (path.startsWith(candidate) && (layer == null || candidate.length() > layer.length())) {
+                    layer = candidate;
+                }
+            }
+            String id = layer != null ? Path.of(layer).relativize(path).toString().replace('\\', '/') : libraryId(changed);
+            changes.add(new Change(changed, id, layer));
+        }
+        return changes;
+    }
+
+    /**
+     * Library id of a change given relative to the library or to a checkout containing it.
+     */
+    static String libraryId(String changed) {
+        String id = changed.replace('\\', '/');
+        while (id.startsWith("./")) id = id.substring(2);
+        for (String root : LIBRARY_ROOTS) {
+            if (id.startsWith(root)) return id;
+        }
+        int context = id.lastIndexOf("context/");
+        if (context >= 0 && (context == 0 || id.charAt(context - 1) == '/')) {
+            return id.substring(context + "context/".length());
+        }
+        return id;
+    }
+
+    private Data read() throws IOException {
+        if (!Files.isRegularFile(file)) return new Data();
+        return MAPPER.readValue(file.toFile(), Data.class);
+    }
+}
@@ -1,7 +1,11 @@
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.yaml.snakeyaml.LoaderOptions;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -10,6 +14,11 @@ import java.util.*;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class McpCatalog {
 
+    /** Catalogs of several MB exceed SnakeYAML's default limit of 3 MB per document. */
+    static final int MAX_CATALOG_CODE_POINTS = 64 * 1024 * 1024;
+
+    private static final ObjectMapper YAML = new ObjectMapper(yamlFactory());
+
     @JsonProperty("servers")
     public List<McpServer> servers = new ArrayList<>();
 
@@ -53,8 +62,123 @@ public class McpCatalog {
     }
 
     public static McpCatalog load(Path path) throws IOException {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        return mapper.readValue(path.toFile(), McpCatalog.class);
+        return YAML.readValue(path.toFile(), McpCatalog.class);
+    }
+
+    /**
+     * Load only what one repository needs from layered catalogs: the named toolset (the last
+     * layer defining it wins) and the servers it and explicitServers reference. The files are
+     * streamed; other entries are skipped once their name is read and never bound, and each
+     * file is read only up to the section needed. Toolsets are read from every layer first,
+     * so the servers pass knows the wanted names whichever order the sections are in. The
+     * result equals merge() of the full catalogs for findToolset(toolsetName) and findServer
+     * on the referenced names.
+     */
+    public static McpCatalog loadSelected(List<Path> paths, String toolsetName, Collection<String> explicitServers) throws IOException {
+        McpCatalog selected = new McpCatalog();
+        Set<String> wanted = new HashSet<>(explicitServers != null ? explicitServers : List.of());
+        if (toolsetName != null) {
+            McpToolset toolset = null;
+            for (Path path : paths) {
+                for (McpToolset found : readSection(path, "toolsets", McpToolset.class, Set.of(toolsetName))) {
+                    toolset = found;
+                }
+            }
+            if (toolset != null) {
+                selected.toolsets.add(toolset);
+                if (toolset.servers != null) wanted.addAll(toolset.servers);
+            }
+        }
+        if (!wanted.isEmpty()) {
+            Map<String, McpServer> servers = new LinkedHashMap<>();
+            for (Path path : paths) {
+                for (McpServer server : readSection(path, "servers", McpServer.class, wanted)) {
+                    servers.put(server.name, server);
+                }
+            }
+            selected.servers = new ArrayList<>(servers.values());
+        }
+        return selected;
+    }
+
+    /**
+     * Entries of one top-level list whose name is in names, bound to type. Parsing stops
+     * at the end of the section.
+     */
+    private static <T> List<T> readSection(Path path, String section, Class<T> type, Set<String> names) throws IOException {
+        List<T> entries = new ArrayList<>();
+        try (JsonParser parser = YAML.getFactory().createParser(path.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return entries;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!field.equals(section) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                JsonToken token;
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                    T entry = token == JsonToken.START_OBJECT ? readEntry(parser, type, names) : null;
+                    if (entry != null) entries.add(entry);
+                    else parser.skipChildren();
+                }
+                break;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Read one list entry. Fields are buffered as tokens until the name is known; an entry
+     * that is not wanted is skipped from there on, a wanted one is bound from the buffer.
+     */
+    private static <T> T readEntry(JsonParser parser, Class<T> type, Set<String> names) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.writeStartObject();
+        Boolean wanted = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (Boolean.FALSE.equals(wanted)) {
+                parser.skipChildren();
+                continue;
+            }
+            if (field.equals("name")) {
+                String name = parser.currentToken().isScalarValue() ? parser.getValueAsString() : null;
+                wanted = name != null && names.contains(name);
+                if (!wanted) {
+                    parser.skipChildren();
+                    continue;
+                }
+            }
+            buffer.writeFieldName(field);
+            buffer.copyCurrentStructure(parser);
+        }
+        if (!Boolean.TRUE.equals(wanted)) return null;
+        buffer.writeEndObject();
+        return YAML.readValue(buffer.asParser(YAML), type);
+    }
+
+    private static YAMLFactory yamlFactory() {
+        LoaderOptions options = new LoaderOptions();
+        options.setCodePointLimit(MAX_CATALOG_CODE_POINTS);
+        return YAMLFactory.builder().loaderOptions(options).build();
+    }
+
+    /**
+     * Merge catalogs in layer order; later catalogs replace servers and toolsets with the same name.
+     */
+    public static McpCatalog merge(List<McpCatalog> catalogs) {
+        Map<String, McpServer> servers = new LinkedHashMap<>();
+        Map<String, McpToolset> toolsets = new LinkedHashMap<>();
+        for (McpCatalog catalog : catalogs) {
+            if (catalog.servers != null) catalog.servers.forEach(s -> servers.put(s.name, s));
+            if (catalog.toolsets != null) catalog.toolsets.forEach(t -> toolsets.put(t.name, t));
+        }
+        McpCatalog merged = new McpCatalog();
+        merged.servers = new ArrayList<>(servers.values());
+        merged.toolsets = new ArrayList<>(toolsets.values());
+        return merged;
     }
 
     public McpServer findServer(String name) {
@@ -0,0 +1,347 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that MCP servers from the catalog can actually be reached (aictx doctor).
+ *
+ * Each server gets an MCP initialize handshake: a JSON-RPC POST for remote servers
+ * (Streamable HTTP, JSON or SSE responses) or a line on stdin for stdio commands. All
+ * servers are probed concurrently, each with its own timeout.
+ */
+public class McpProbe {
+
+    public enum Status { OK, AUTH_REQUIRED, UNRESOLVED, FAILED, TIMEOUT }
+
+    public static final class Result {
+        public final String name;
+        public final String type;
+        public final String target;
+        public final Status status;
+        public final long latencyMillis;
+        public final String detail;
+
+        Result(McpCatalog.McpServer server, String target, Status status, long latencyMillis, String detail) {
+            this.name = server.name;
+            this.type = "stdio".equals(server.type) ? "stdio" : "remote";
+            this.target = target;
+            this.status = status;
+            this.latencyMillis = latencyMillis;
+            this.detail = detail;
+        }
+
+        public boolean isHealthy() {
+            return status == Status.OK || status == Status.AUTH_REQUIRED;
+        }
+    }
+
+    static final String PROTOCOL_VERSION = "2025-03-26";
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{(\\w+)}}");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Duration timeout;
+    private final Map<String, String> variables;
+    private final HttpClient http;
+
+    /**
+     * @param variables values for {{NAME}} placeholders, usually the environment
+     */
+    public McpProbe(Duration timeout, Map<String, String> variables) {
+        this.timeout = timeout;
+        this.variables = variables;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Probe all servers concurrently. Results are in input order.
+     */
+    public List<Result> probeAll(List<McpCatalog.McpServer> servers) throws InterruptedException {
+        if (servers.isEmpty()) return List.of();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(servers.size(), 16), daemonThreads());
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (McpCatalog.McpServer server : servers) {
+                futures.add(executor.submit(() -> probe(server)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new Result(servers.get(i), "", Status.FAILED, 0, String.valueOf(e.getCause())));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public Result probe(McpCatalog.McpServer server) {
+        boolean stdio = "stdio".equals(server.type);
+        String raw = stdio ? server.command : server.url;
+        if (raw == null || raw.isBlank()) {
+            return new Result(server, "", Status.UNRESOLVED, 0, stdio ? "no command configured" : "no url configured");
+        }
+        String target = resolve(raw);
+        List<String> unresolved = placeholders(target);
+        if (!unresolved.isEmpty()) {
+            return new Result(server, raw, Status.UNRESOLVED, 0, "unresolved placeholder "
+                    + unresolved.stream().map(p -> "{{" + p + "}}").collect(Collectors.joining(", "))
+                    + " (set it in the environment to probe)");
+        }
+        if (target.contains("TODO")) {
+            return new Result(server, raw, Status.UNRESOLVED, 0, "contains TODO");
+        }
+        return stdio ? probeStdio(server, target) : probeRemote(server, target);
+    }
+
+    private String resolve(String value) {
+        return TemplateEngine.render(value, variables);
+    }
+
+    static List<String> placeholders(String value) {
+        List<String> names = new ArrayList<>();
+        Matcher m = PLACEHOLDER.matcher(value);
+        while (m.find()) names.add(m.group(1));
+        return names;
+    }
+
+    // ── Remote ───────────────────────────────────────────────────────────────
+
+    private Result probeRemote(McpCatalog.McpServer server, String url) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        CompletableFuture<HttpResponse<Stream<String>>> pending = null;
+        HttpResponse<Stream<String>> response = null;
+        ExecutorService reader = Executors.newSingleThreadExecutor(daemonThreads());
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "application/json, text/event-stream")
+                    .header("MCP-Protocol-Version", PROTOCOL_VERSION)
+                    .POST(HttpRequest.BodyPublishers.ofString(initializeRequest()))
+                    .build();
+            // The request timeout only covers the headers; an SSE body may stay open, so the
+            // body is read line by line until the initialize response, within the same deadline
+            pending = http.sendAsync(request, HttpResponse.BodyHandlers.ofLines());
+            response = pending.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            int code = response.statusCode();
+            if (code == 401 || code == 403) {
+                return new Result(server, url, Status.AUTH_REQUIRED, millisSince(start), "HTTP " + code + " (sign in through your tool)");
+            }
+            if (code / 100 != 2) {
+                return new Result(server, url, Status.FAILED, millisSince(start), "HTTP " + code);
+            }
+            Stream<String> lines = response.body();
+            Future<String> body = reader.submit(() -> initializeBody(lines.iterator()));
+            String text = body.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            return handshakeResult(server, url, millisSince(start), text);
+        } catch (TimeoutException e) {
+            return new Result(server, url, Status.TIMEOUT, millisSince(start), "no response within " + timeout.toMillis() + " ms");
+        } catch (IllegalArgumentException e) {
+            return new Result(server, url, Status.FAILED, 0, "invalid url: " + e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof HttpTimeoutException) {
+                return new Result(server, url, Status.TIMEOUT, millisSince(start), "no response within " + timeout.toMillis() + " ms");
+            }
+            String message = cause.getMessage() != null ? cause.getClass().getSimpleName() + ": " + cause.getMessage() : cause.getClass().getSimpleName();
+            return new Result(server, url, Status.FAILED, millisSince(start), message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(server, url, Status.TIMEOUT, millisSince(start), "interrupted");
+        } finally {
+            if (pending != null) pending.cancel(true);
+            // Closing the body cancels the exchange and unblocks the reader
+            if (response != null) response.body().close();
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * Read a response body up to the initialize response: for SSE the first data: line that
+     * holds it (the stream may stay open after it), otherwise the whole body.
+     */
+    private static String initializeBody(Iterator<String> lines) {
+        StringBuilder body = new StringBuilder();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("data:") && isInitializeResponse(line.substring(5).trim())) return line;
+            body.append(line).append('\n');
+        }
+        return body.toString();
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    // ── Stdio ────────────────────────────────────────────────────────────────
+
+    private Result probeStdio(McpCatalog.McpServer server, String command) {
+        long start = System.nanoTime();
+        Process process;
+        try {
+            process = new ProcessBuilder(tokenize(command))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            return new Result(server, command, Status.FAILED, millisSince(start), "cannot start: " + e.getMessage());
+        }
+
+        ExecutorService reader = Executors.newSingleThreadExecutor(daemonThreads());
+        try {
+            Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            stdin.write(initializeRequest() + "\n");
+            stdin.flush();
+
+            BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            Future<String> response = reader.submit(() -> {
+                // Servers may log or send notifications first; wait for the response to id 1
+                String line;
+                while ((line = stdout.readLine()) != null) {
+                    if (isInitializeResponse(line)) return line;
+                }
+                return null;
+            });
+            String line = response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            long latency = millisSince(start);
+            if (line == null) {
+                return new Result(server, command, Status.FAILED, latency, "exited without answering initialize");
+            }
+            return handshakeResult(server, command, latency, line);
+        } catch (TimeoutException e) {
+            return new Result(server, command, Status.TIMEOUT, millisSince(start), "no response within " + timeout.toMillis() + " ms");
+        } catch (IOException | ExecutionException e) {
+            return new Result(server, command, Status.FAILED, millisSince(start), "process closed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(server, command, Status.TIMEOUT, millisSince(start), "interrupted");
+        } finally {
+            reader.shutdownNow();
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Split a command line on whitespace, keeping single- or double-quoted arguments together.
+     */
+    static List<String> tokenize(String command) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        boolean inToken = false;
+        for (char c : command.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                else current.append(c);
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) tokens.add(current.toString());
+                current.setLength(0);
+                inToken = false;
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) tokens.add(current.toString());
+        return tokens;
+    }
+
+    // ── Handshake ────────────────────────────────────────────────────────────
+
+    private static String initializeRequest() {
+        Map<String, Object> clientInfo = new LinkedHashMap<>();
+        clientInfo.put("name", "aictx-doctor");
+        clientInfo.put("version", aictx.VERSION);
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("protocolVersion", PROTOCOL_VERSION);
+        params.put("capabilities", Map.of());
+        params.put("clientInfo", clientInfo);
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("jsonrpc", "2.0");
+        request.put("id", 1);
+        request.put("method", "initialize");
+        request.put("params", params);
+        try {
+            return MAPPER.writeValueAsString(request);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isInitializeResponse(String line) {
+        JsonNode node = parse(line);
+        return node != null && node.path("id").asInt(-1) == 1 && (node.has("result") || node.has("error"));
+    }
+
+    /**
+     * Interpret an initialize response body: plain JSON, or SSE with the JSON in a data: line.
+     */
+    private static Result handshakeResult(McpCatalog.McpServer server, String target, long latency, String body) {
+        JsonNode response = parse(body.trim());
+        if (response == null) {
+            for (String line : body.split("\n")) {
+                if (line.startsWith("data:") && isInitializeResponse(line.substring(5).trim())) {
+                    response = parse(line.substring(5).trim());
+                    break;
+                }
+            }
+        }
+        if (response == null) {
+            return new Result(server, target, Status.FAILED, latency, "response is not a JSON-RPC initialize result");
+        }
+        if (response.has("error")) {
+            return new Result(server, target, Status.FAILED, latency, "initialize error: " + response.get("error").path("message").asText());
+        }
+        JsonNode result = response.path("result");
+        String serverInfo = result.path("serverInfo").path("name").asText("unknown server");
+        String version = result.path("protocolVersion").asText("?");
+        return new Result(server, target, Status.OK, latency, serverInfo + ", protocol " + version);
+    }
+
+    private static JsonNode parse(String text) {
+        if (!text.startsWith("{")) return null;
+        try {
+            return MAPPER.readTree(text);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "aictx-doctor");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Loads module configs and their context library for one command run.
+ *
+ * Holds one ConfigResolver and one ContextIndex per distinct layer list, so modules
+ * of a monorepo share parsed ancestors and library lookups.
+ */
+public class ModuleLoader {
+
+    private final Path contextRoot;
+    private final ConfigResolver resolver = new ConfigResolver();
+    private final Map<List<Path>, ContextIndex> indexes = new HashMap<>();
+
+    public ModuleLoader(Path contextRoot) {
+        this.contextRoot = contextRoot;
+    }
+
+    /**
+     * Config files to process: every module config under the current directory,
+     * or the single config at configPath. Prints the reason and returns an empty list if none.
+     */
+    public static List<Path> findConfigs(boolean allModules, String configPath) throws IOException {
+        if (allModules) {
+            List<Path> configs = ConfigResolver.discoverModules(Path.of("."));
+            if (configs.isEmpty()) {
+                System.err.println("No " + ConfigResolver.CONFIG_FILE + " found under the current directory.");
+            }
+            return configs;
+        }
+        Path config = Path.of(configPath);
+        if (!Files.exists(config)) {
+            System.err.println("Config not found: " + configPath);
+            System.err.println("Run 'aictx init' first to create a config file.");
+            return List.of();
+        }
+        return List.of(config);
+    }
+
+    /**
+     * Directory outputs are generated into for a config.
+     */
+    public static Path moduleDir(Path config, boolean allModules) {
+        return allModules ? config.getParent() : Path.of(".");
+    }
+
+    /**
+     * Load a config merged with its ancestors. Prints the reason and returns null if it is unusable.
+     */
+    public ContextModel load(Path config) {
+        ContextModel ctx;
+        try {
+            ctx = resolver.resolve(config);
+        } catch (Exception e) {
+            System.err.println("Failed to parse config " + config + ": " + e.getMessage());
+            return null;
+        }
+
+        if (ctx.schemaVersion > aictx.SCHEMA_VERSION) {
+            System.err.println("Config schema version " + ctx.schemaVersion + " is newer than supported (" + aictx.SCHEMA_VERSION + ").");
+            System.err.println("Run 'aictx upgrade' to get the latest CLI.");
+            return null;
+        }
+        return ctx;
+    }
+
+    /**
+     * Context index for the layers a config selects, built once per distinct layer list.
+     */
+    public ContextIndex indexFor(ContextModel ctx) throws IOException {
+        List<Path> layers = VersionUtil.resolveContextLayers(contextRoot, ctx.contextLayers);
+        ContextIndex index = indexes.get(layers);
+        if (index == null) {
+            index = ContextIndex.build(layers);
+            indexes.put(layers, index);
+        }
+        return index;
+    }
+}
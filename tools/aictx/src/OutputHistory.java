@@ -0,0 +1,264 @@
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Previous versions of generated files, kept in the repository's .aictx/history.
+ *
+ * Each setup run that replaces files becomes one generation: a directory holding, for every
+ * file it replaced, the old version as a hard link (outputs are always written to a new
+ * file and renamed into place, so the link keeps the old content for free), or a gzip copy
+ * where links are not possible, plus a manifest.json written last. Files the run created
+ * are recorded as absent. Rollback restores the newest generation and drops it. History is
+ * bounded by generation count (AICTX_HISTORY_MAX, default 10) and size (AICTX_HISTORY_MAX_MB,
+ * default 50); the oldest generations go first.
+ */
+public class OutputHistory {
+
+    static final String HISTORY_DIR = ".aictx/history";
+    static final String MANIFEST = "manifest.json";
+    static final int DEFAULT_MAX_GENERATIONS = 10;
+    static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'");
+
+    public enum Storage { LINK, GZIP, ABSENT }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        @JsonProperty("path")
+        public String path;
+
+        @JsonProperty("storage")
+        public Storage storage;
+
+        @JsonProperty("bytes")
+        public long bytes;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Generation {
+        @JsonProperty("id")
+        public String id;
+
+        @JsonProperty("createdAt")
+        public String createdAt;
+
+        @JsonProperty("aictxVersion")
+        public String aictxVersion;
+
+        @JsonProperty("files")
+        public List<Entry> files = new ArrayList<>();
+    }
+
+    private final Path repoDir;
+    private final Path dir;
+    private final int maxGenerations;
+    private final long maxBytes;
+    private Generation current;
+    private Path currentDir;
+
+    public OutputHistory(Path repoDir, int maxGenerations, long maxBytes) {
+        this.repoDir = repoDir;
+        this.dir = repoDir.resolve(HISTORY_DIR);
+        this.maxGenerations = maxGenerations;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * History of a repository, bounded by AICTX_HISTORY_MAX and AICTX_HISTORY_MAX_MB.
+     */
+    public static OutputHistory of(Path repoDir) {
+        int maxGenerations = DEFAULT_MAX_GENERATIONS;
+        long maxBytes = DEFAULT_MAX_BYTES;
+        try {
+            String max = System.getenv("AICTX_HISTORY_MAX");
+            if (max != null) maxGenerations = Math.max(1, Integer.parseInt(max.trim()));
+            String maxMb = System.getenv("AICTX_HISTORY_MAX_MB");
+            if (maxMb != null) maxBytes = Long.parseLong(maxMb.trim()) * 1024 * 1024;
+        } catch (NumberFormatException ignored) {
+        }
+        return new OutputHistory(repoDir, maxGenerations, maxBytes);
+    }
+
+    // ── Recording ────────────────────────────────────────────────────────────
+
+    /**
+     * Keep the current version of a file before it is replaced. Called by the directory
+     * sink; the first call of a run starts a new generation.
+     */
+    public synchronized void record(String relativePath) throws IOException {
+        if (current == null) {
+            current = new Generation();
+            ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+            current.id = ID_FORMAT.format(now) + "-" + String.format("%04x", ThreadLocalRandom.current().nextInt(0x10000));
+            current.createdAt = now.toInstant().toString();
+            current.aictxVersion = aictx.VERSION;
+            currentDir = dir.resolve(current.id);
+            Files.createDirectories(currentDir);
+        }
+        if (current.files.stream().anyMatch(e -> e.path.equals(relativePath))) return;
+
+        Path target = repoDir.resolve(relativePath);
+        Entry entry = new Entry();
+        entry.path = relativePath;
+        if (!Files.isRegularFile(target)) {
+            entry.storage = Storage.ABSENT;
+        } else {
+            entry.bytes = Files.size(target);
+            Path snapshot = currentDir.resolve("files").resolve(relativePath);
+            Files.createDirectories(snapshot.getParent());
+            try {
+                Files.createLink(snapshot, target);
+                entry.storage = Storage.LINK;
+            } catch (UnsupportedOperationException | IOException e) {
+                // No hard links here (or across devices): keep a compressed copy
+                try (InputStream in = Files.newInputStream(target);
+                     OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipPath(snapshot)))) {
+                    in.transferTo(out);
+                }
+                entry.storage = Storage.GZIP;
+            }
+        }
+        current.files.add(entry);
+    }
+
+    /**
+     * Publish the generation recorded by this run (if any) and prune old generations.
+     * Returns the generation id, or null if nothing was replaced.
+     */
+    public synchronized String commit() throws IOException {
+        if (current == null) return null;
+        Path tmp = Files.createTempFile(currentDir, MANIFEST, ".tmp");
+        try {
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), current);
+            Files.move(tmp, currentDir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        String id = current.id;
+        current = null;
+        currentDir = null;
+        prune();
+        return id;
+    }
+
+    // ── Listing & pruning ────────────────────────────────────────────────────
+
+    /**
+     * Committed generations, newest first.
+     */
+    public List<Generation> generations() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        List<Generation> result = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path genDir : entries.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Path manifest = genDir.resolve(MANIFEST);
+                if (!Files.isRegularFile(manifest)) continue;
+                try {
+                    result.add(MAPPER.readValue(manifest.toFile(), Generation.class));
+                } catch (IOException e) {
+                    // Damaged manifest: the generation cannot be restored, prune drops it
+                }
+            }
+        }
+        return result;
+    }
+
+    private void prune() throws IOException {
+        List<Generation> generations = generations();
+        Set<String> keep = new HashSet<>();
+        long bytes = 0;
+        for (int i = 0; i < generations.size(); i++) {
+            long size = generations.get(i).files.stream().mapToLong(e -> e.bytes).sum();
+            // The newest generation is always kept, whatever its size
+            if (i > 0 && (i >= maxGenerations || bytes + size > maxBytes)) break;
+            keep.add(generations.get(i).id);
+            bytes += size;
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path genDir : entries.collect(Collectors.toList())) {
+                String name = genDir.getFileName().toString();
+                // Leave generations still being recorded by this or another run alone
+                if (keep.contains(name) || (!Files.exists(genDir.resolve(MANIFEST)) && isRecent(genDir))) continue;
+                ContextCache.deleteRecursively(genDir);
+            }
+        }
+    }
+
+    private static boolean isRecent(Path path) throws IOException {
+        return System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() < 60 * 60 * 1000L;
+    }
+
+    // ── Rollback ─────────────────────────────────────────────────────────────
+
+    /**
+     * Restore the newest generation and remove it from the history. Every file is staged
+     * next to its target first (a hard link, or the decompressed copy); only when all are
+     * staged are they renamed into place, so a failure leaves the outputs untouched.
+     * Returns the restored generation, or null if the history is empty.
+     */
+    public synchronized Generation rollback() throws IOException {
+        List<Generation> generations = generations();
+        if (generations.isEmpty()) return null;
+        Generation generation = generations.get(0);
+        Path genDir = dir.resolve(generation.id);
+
+        Map<Path, Path> staged = new LinkedHashMap<>();
+        List<Path> deletions = new ArrayList<>();
+        Path root = repoDir.toAbsolutePath().normalize();
+        try {
+            for (Entry entry : generation.files) {
+                Path target = root.resolve(entry.path).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("history entry outside the repository: " + entry.path);
+                }
+                if (entry.storage == Storage.ABSENT) {
+                    deletions.add(target);
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                Path tmp = target.resolveSibling("." + target.getFileName() + ".aictx-rollback");
+                Files.deleteIfExists(tmp);
+                Path snapshot = genDir.resolve("files").resolve(entry.path);
+                if (entry.storage == Storage.LINK) {
+                    Files.createLink(tmp, snapshot);
+                } else {
+                    try (InputStream in = new GZIPInputStream(Files.newInputStream(gzipPath(snapshot)))) {
+                        Files.copy(in, tmp);
+                    }
+                }
+                staged.put(tmp, target);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path tmp : staged.keySet()) Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        for (Map.Entry<Path, Path> move : staged.entrySet()) {
+            Files.move(move.getKey(), move.getValue(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path target : deletions) {
+            Files.deleteIfExists(target);
+        }
+        ContextCache.deleteRecursively(genDir);
+        return generation;
+    }
+
+    private static Path gzipPath(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".gz");
+    }
+}
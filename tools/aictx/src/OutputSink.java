@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Destination for generated files.
+ *
+ * Generator hands every rendered output to a sink: {@link Directory} writes into a
+ * repository (honouring managed regions and unmanaged files), {@link Memory} collects a
+ * map and {@link Archive} streams a zip or tar to any OutputStream.
+ */
+public interface OutputSink {
+
+    enum Outcome { WRITTEN, REGION, SKIPPED, UNCHANGED }
+
+    /**
+     * Store one output, keyed by its path relative to the repository root.
+     */
+    Outcome write(String relativePath, String content) throws IOException;
+
+    // ── Directory ────────────────────────────────────────────────────────────
+
+    /**
+     * Writes into a directory. Files with a managed region only get the region replaced;
+     * existing files without the aictx marker are skipped unless forced, and files that
+     * already have the rendered content are left untouched. Files are written to a temp
+     * file and renamed into place, so a reader (or an OutputHistory link) never sees a
+     * partly written file.
+     */
+    final class Directory implements OutputSink {
+        private final Path root;
+        private final boolean force;
+        private OutputHistory history;
+
+        public Directory(Path root, boolean force) {
+            this.root = root;
+            this.force = force;
+        }
+
+        /**
+         * Keep the previous version of every replaced file in a history.
+         */
+        public Directory withHistory(OutputHistory history) {
+            this.history = history;
+            return this;
+        }
+
+        @Override
+        public Outcome write(String relativePath, String content) throws IOException {
+            Path target = root.resolve(relativePath);
+
+            if (Files.exists(target)) {
+                // User-owned file with a managed region: replace only the region
+                RegionSplicer.Region region = RegionSplicer.locate(target);
+                if (region != null) {
+                    if (history != null) history.record(relativePath);
+                    RegionSplicer.splice(target, region, RegionSplicer.regionContent(content));
+                    return Outcome.REGION;
+                }
+
+                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                if (Files.size(target) == bytes.length && Arrays.equals(Files.readAllBytes(target), bytes)) {
+                    return Outcome.UNCHANGED;
+                }
+
+                // Check if file is not managed by aictx
+                if (!force && !DriftChecker.containsMarker(target)) {
+                    return Outcome.SKIPPED;
+                }
+            }
+
+            if (history != null) history.record(relativePath);
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            // Created like a regular file (umask applies), unlike Files.createTempFile
+            Path tmp = dir.resolve("." + target.getFileName() + "." + System.nanoTime() + ".aictx.tmp");
+            try {
+                Files.writeString(tmp, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView("posix")) {
+                    Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return Outcome.WRITTEN;
+        }
+    }
+
+    // ── Memory ───────────────────────────────────────────────────────────────
+
+    /**
+     * Collects outputs in insertion order. Safe to share between threads.
+     */
+    final class Memory implements OutputSink {
+        private final Map<String, String> files = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        @Override
+        public Outcome write(String relativePath, String content) {
+            files.put(relativePath, content);
+            return Outcome.WRITTEN;
+        }
+
+        public Map<String, String> files() {
+            synchronized (files) {
+                return new LinkedHashMap<>(files);
+            }
+        }
+    }
+
+    // ── Archive ──────────────────────────────────────────────────────────────
+
+    /**
+     * Streams outputs as zip or ustar entries. close() finishes the archive but leaves
+     * the underlying stream open.
+     */
+    final class Archive implements OutputSink, Closeable {
+
+        public enum Format { ZIP, TAR }
+
+        private static final int TAR_BLOCK = 512;
+
+        private final Format format;
+        private final OutputStream out;
+        private final ZipOutputStream zip;
+        private final long mtime = System.currentTimeMillis() / 1000;
+
+        public Archive(OutputStream out, Format format) {
+            this.format = format;
+            this.out = out;
+            this.zip = format == Format.ZIP ? new ZipOutputStream(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            }) : null;
+        }
+
+        /**
+         * Pick the format from a file name: ".zip", otherwise tar.
+         */
+        public static Format formatFor(String fileName) {
+            return fileName.toLowerCase(Locale.ROOT).endsWith(".zip") ? Format.ZIP : Format.TAR;
+        }
+
+        @Override
+        public synchronized Outcome write(String relativePath, String content) throws IOException {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            String name = relativePath.replace('\\', '/');
+            if (format == Format.ZIP) {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTime(mtime * 1000);
+                zip.putNextEntry(entry);
+                zip.write(bytes);
+                zip.closeEntry();
+            } else {
+                out.write(tarHeader(name, bytes.length));
+                out.write(bytes);
+                int padding = (TAR_BLOCK - bytes.length % TAR_BLOCK) % TAR_BLOCK;
+                out.write(new byte[padding]);
+            }
+            return Outcome.WRITTEN;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (format == Format.ZIP) {
+                zip.finish();
+                zip.flush();
+            } else {
+                // End of archive: two zero blocks
+                out.write(new byte[2 * TAR_BLOCK]);
+                out.flush();
+            }
+        }
+
+        private byte[] tarHeader(String name, long size) throws IOException {
+            byte[] header = new byte[TAR_BLOCK];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            String prefix = "";
+            if (nameBytes.length > 100) {
+                // ustar splits long names at a '/' into prefix (155) and name (100)
+                int split = name.lastIndexOf('/', name.length() - 1);
+                while (split > 0 && name.substring(split + 1).getBytes(StandardCharsets.UTF_8).length > 100) {
+                    split = name.lastIndexOf('/', split - 1);
+                }
+                if (split <= 0 || name.substring(0, split).getBytes(StandardCharsets.UTF_8).length > 155) {
+                    throw new IOException("Path too long for tar: " + name);
+                }
+                prefix = name.substring(0, split);
+                nameBytes = name.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+            }
+            System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+            putOctal(header, 100, 8, 0644);
+            putOctal(header, 108, 8, 0);
+            putOctal(header, 116, 8, 0);
+            putOctal(header, 124, 12, size);
+            putOctal(header, 136, 12, mtime);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            header[156] = '0';
+            byte[] magic = "ustar\u000000".getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(magic, 0, header, 257, magic.length);
+            byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(prefixBytes, 0, header, 345, prefixBytes.length);
+
+            long checksum = 0;
+            for (byte b : header) checksum += b & 0xff;
+            putOctal(header, 148, 7, checksum);
+            return header;
+        }
+
+        private static void putOctal(byte[] header, int offset, int length, long value) {
+            String octal = Long.toOctalString(value);
+            String padded = "0".repeat(Math.max(0, length - 1 - octal.length())) + octal;
+            byte[] bytes = padded.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+            header[offset + length - 1] = 0;
+        }
+    }
+}
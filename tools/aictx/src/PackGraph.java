@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pack inheritance: a pack may list parent packs under extends.
+ *
+ * The closure of a selection is every selected pack together with its ancestors in
+ * topological order. Ancestors come first and each pack appears once, even when several
+ * selected packs share it. Unknown parents and cycles are reported as problems and the
+ * offending edge is skipped. Closures are memoized per ContextIndex, which ModuleLoader and
+ * AictxEngine share across modules and calls, so a hierarchy is walked once per library.
+ */
+public class PackGraph {
+
+    public static final class Problem {
+        public final String code;
+        public final String message;
+
+        Problem(String code, String message) {
+            this.code = code;
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Problem && ((Problem) o).code.equals(code) && ((Problem) o).message.equals(message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(code, message);
+        }
+    }
+
+    public static final class Closure {
+        /** Selected packs and their ancestors, ancestors first, each once. */
+        public final List<PackModel> packs;
+        public final List<Problem> problems;
+
+        Closure(List<PackModel> packs, List<Problem> problems) {
+            this.packs = packs;
+            this.problems = problems;
+        }
+    }
+
+    /** Linearization of one pack: ancestor ids first, the pack itself last. */
+    private static final class Lineage {
+        final List<String> order;
+        final List<Problem> problems;
+
+        Lineage(List<String> order, List<Problem> problems) {
+            this.order = order;
+            this.problems = problems;
+        }
+    }
+
+    private static final class Memo {
+        final Map<String, Lineage> lineages = new ConcurrentHashMap<>();
+        final Map<String, PackModel> resolved = new ConcurrentHashMap<>();
+    }
+
+    private static final Map<ContextIndex, Memo> MEMO = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Selected packs with their ancestors. Packs that do not exist are reported as missing-pack.
+     */
+    public static Closure closure(ContextIndex index, Collection<String> packIds) throws IOException {
+        Memo memo = memo(index);
+        Set<String> order = new LinkedHashSet<>();
+        Set<Problem> problems = new LinkedHashSet<>();
+        for (String packId : packIds) {
+            // Each lineage is topological, so keeping first occurrences keeps the union topological
+            Lineage lineage = lineage(index, memo, packId);
+            order.addAll(lineage.order);
+            problems.addAll(lineage.problems);
+        }
+        List<PackModel> packs = new ArrayList<>();
+        for (String id : order) {
+            packs.add(index.pack(id));
+        }
+        return new Closure(Collections.unmodifiableList(packs), List.copyOf(problems));
+    }
+
+    /**
+     * A pack merged with its ancestors: defaultGlobals, defaultSkills and pathRules are the
+     * union over the lineage (ancestors first), defaultMcpToolset is the nearest one set.
+     * id, description, appliesToRepoTypes and extends are the pack's own. Null if the pack
+     * does not exist. Path rules stay relative to the pack that declares them; use
+     * {@link #closure} to locate their files.
+     */
+    public static PackModel resolve(ContextIndex index, String packId) throws IOException {
+        Memo memo = memo(index);
+        PackModel resolved = memo.resolved.get(packId);
+        if (resolved != null) return resolved;
+
+        PackModel own = index.pack(packId);
+        if (own == null) return null;
+        Set<String> globals = new LinkedHashSet<>();
+        Set<String> skills = new LinkedHashSet<>();
+        Set<String> pathRules = new LinkedHashSet<>();
+        String toolset = null;
+        for (String id : lineage(index, memo, packId).order) {
+            PackModel pack = index.pack(id);
+            globals.addAll(orEmpty(pack.defaultGlobals));
+            skills.addAll(orEmpty(pack.defaultSkills));
+            pathRules.addAll(orEmpty(pack.pathRules));
+            if (pack.defaultMcpToolset != null) toolset = pack.defaultMcpToolset;
+        }
+
+        resolved = new PackModel();
+        resolved.id = own.id;
+        resolved.description = own.description;
+        resolved.appliesToRepoTypes = orEmpty(own.appliesToRepoTypes);
+        resolved.extendsPacks = orEmpty(own.extendsPacks);
+        resolved.defaultGlobals = new ArrayList<>(globals);
+        resolved.defaultSkills = new ArrayList<>(skills);
+        resolved.pathRules = new ArrayList<>(pathRules);
+        resolved.defaultMcpToolset = toolset;
+        PackModel existing = memo.resolved.putIfAbsent(packId, resolved);
+        return existing != null ? existing : resolved;
+    }
+
+    private static Memo memo(ContextIndex index) {
+        return MEMO.computeIfAbsent(index, k -> new Memo());
+    }
+
+    private static Lineage lineage(ContextIndex index, Memo memo, String packId) throws IOException {
+        Lineage lineage = memo.lineages.get(packId);
+        if (lineage == null) {
+            List<String> order = new ArrayList<>();
+            List<Problem> problems = new ArrayList<>();
+            if (index.pack(packId) == null) {
+                problems.add(new Problem("missing-pack", "pack not found: " + packId));
+            } else {
+                visit(index, packId, new ArrayDeque<>(), new HashSet<>(), order, problems);
+            }
+            lineage = new Lineage(List.copyOf(order), List.copyOf(problems));
+            memo.lineages.putIfAbsent(packId, lineage);
+        }
+        return lineage;
+    }
+
+    /**
+     * Depth-first post-order walk over extends edges; a pack is added after all its parents.
+     */
+    private static void visit(ContextIndex index, String packId, Deque<String> path, Set<String> done,
+                              List<String> order, List<Problem> problems) throws IOException {
+        if (done.contains(packId)) return;
+        path.addLast(packId);
+        for (String parent : orEmpty(index.pack(packId).extendsPacks)) {
+            if (path.contains(parent)) {
+                List<String> cycle = new ArrayList<>(path);
+                cycle = cycle.subList(cycle.indexOf(parent), cycle.size());
+                problems.add(new Problem("pack-cycle", "pack inheritance cycle: "
+                        + String.join(" -> ", cycle) + " -> " + parent));
+                continue;
+            }
+            if (index.pack(parent) == null) {
+                problems.add(new Problem("missing-parent", "pack '" + packId + "' extends unknown pack '" + parent + "'"));
+                continue;
+            }
+            visit(index, parent, path, done, order, problems);
+        }
+        path.removeLast();
+        done.add(packId);
+        order.add(packId);
+    }
+
+    private static List<String> orEmpty(List<String> list) {
+        return list != null ? list : List.of();
+    }
+}
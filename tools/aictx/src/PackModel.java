@@ -16,6 +16,10 @@ public class PackModel {
     @JsonProperty("description")
     public String description;
 
+    /** Parent packs whose defaults, rules, skills and path rules this pack inherits (see PackGraph). */
+    @JsonProperty("extends")
+    public List<String> extendsPacks = new ArrayList<>();
+
     @JsonProperty("appliesToRepoTypes")
     public List<String> appliesToRepoTypes = new ArrayList<>();
 
@@ -35,4 +39,14 @@ public class PackModel {
         ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
         return mapper.readValue(path.toFile(), PackModel.class);
     }
+
+    /**
+     * Short id of a path rule, e.g. "paths/migrations.instructions.md" -> "migrations".
+     */
+    public static String pathRuleId(String pathRule) {
+        String name = Path.of(pathRule).getFileName().toString();
+        if (name.endsWith(".instructions.md")) return name.substring(0, name.length() - ".instructions.md".length());
+        if (name.endsWith(".md")) return name.substring(0, name.length() - ".md".length());
+        return name;
+    }
 }
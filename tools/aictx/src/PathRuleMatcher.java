@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the applyTo globs of pack path rules against repository paths.
+ *
+ * All globs of all selected rules are compiled into one segment trie: literal path segments
+ * are hash lookups, wildcard segments are shared regex edges and "**" is a self-looping
+ * node. {a,b} alternations are expanded into separate paths first; braces that do not form
+ * a balanced group are matched literally. Matching walks the trie once per path segment with
+ * a set of active nodes, so the cost does not grow with the number of rules that share a
+ * prefix. When walking a tree, directories whose active set becomes empty cannot match any
+ * rule and are pruned.
+ */
+public class PathRuleMatcher {
+
+    /**
+     * A path rule file and its applyTo globs.
+     */
+    public static final class Rule {
+        public final String id;
+        public final String source;
+        public final List<String> globs;
+
+        Rule(String id, String source, List<String> globs) {
+            this.id = id;
+            this.source = source;
+            this.globs = globs;
+        }
+    }
+
+    /**
+     * A rule matched for a path, with the glob that matched.
+     */
+    public static final class Match {
+        public final Rule rule;
+        public final String glob;
+
+        Match(Rule rule, String glob) {
+            this.rule = rule;
+            this.glob = glob;
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> literal = new HashMap<>();
+        final Map<String, Node> wildcard = new LinkedHashMap<>();
+        final Map<String, Pattern> wildcardPatterns = new HashMap<>();
+        Node globstar;
+        boolean selfLoop;
+        final BitSet accepts = new BitSet();
+    }
+
+    /**
+     * Active trie nodes after consuming a path prefix.
+     */
+    public static final class State {
+        private final List<Node> nodes;
+
+        private State(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        public boolean isDead() {
+            return nodes.isEmpty();
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<Rule> globRule = new ArrayList<>();
+    private final List<String> globText = new ArrayList<>();
+
+    public static PathRuleMatcher compile(List<Rule> rules) {
+        PathRuleMatcher matcher = new PathRuleMatcher();
+        for (Rule rule : rules) {
+            matcher.rules.add(rule);
+            for (String glob : rule.globs) {
+                matcher.add(glob, rule);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Compile the path rules a config selects: every pathRules entry of its packs and the
+     * packs they extend, narrowed by the config's own pathRules list.
+     */
+    public static PathRuleMatcher load(ContextIndex index, ContextModel ctx) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        for (PackModel pack : PackGraph.closure(index, ctx.packs).packs) {
+            for (String pathRule : pack.pathRules) {
+                String ruleId = PackModel.pathRuleId(pathRule);
+                if (!ctx.selectsPathRule(ruleId)) continue;
+                String source = ContextIndex.normalizeId("packs/" + pack.id + "/" + pathRule);
+                Path ruleFile = index.resolve(source);
+                if (ruleFile == null) continue;
+                List<String> globs = new ArrayList<>();
+                for (String applyTo : Frontmatter.strings(Frontmatter.read(ruleFile), "applyTo")) {
+                    globs.addAll(splitApplyTo(applyTo));
+                }
+                rules.add(new Rule(ruleId, source, globs));
+            }
+        }
+        return compile(rules);
+    }
+
+    /**
+     * Split a comma-separated applyTo value, keeping commas inside {a,b} alternations.
+     */
+    static List<String> splitApplyTo(String applyTo) {
+        List<String> globs = new ArrayList<>();
+        int depth = 0;
+        StringBuilder current = new StringBuilder();
+        for (char c : applyTo.toCharArray()) {
+            if (c == '{') depth++;
+            if (c == '}') depth = Math.max(0, depth - 1);
+            if (c == ',' && depth == 0) {
+                addGlob(globs, current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        addGlob(globs, current.toString());
+        return globs;
+    }
+
+    private static void addGlob(List<String> globs, String glob) {
+        String trimmed = glob.trim();
+        while (trimmed.startsWith("./") || trimmed.startsWith("/")) {
+            trimmed = trimmed.substring(trimmed.indexOf('/') + 1);
+        }
+        if (!trimmed.isEmpty()) globs.add(trimmed);
+    }
+
+    /**
+     * Leading literal directory of a glob, e.g. "db/migration/**" -> "db/migration",
+     * or "" if the glob starts with a wildcard. Expects a glob from expandBraces.
+     */
+    public static String literalPrefix(String glob) {
+        String[] segments = glob.split("/");
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (isWildcard(segments[i])) break;
+            if (prefix.length() > 0) prefix.append('/');
+            prefix.append(segments[i]);
+        }
+        return prefix.toString();
+    }
+
+    private void add(String glob, Rule rule) {
+        int globIndex = globRule.size();
+        globRule.add(rule);
+        globText.add(glob);
+        // Alternatives may span segments ("{src/main,lib}/**"), so expand them before splitting
+        for (String expanded : expandBraces(glob)) {
+            addPath(expanded, globIndex);
+        }
+    }
+
+    private void addPath(String glob, int globIndex) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : glob.split("/")) {
+            if (!segment.isEmpty()) segments.add(segment);
+        }
+        // A trailing "**" matches below the directory, not the directory itself: "db/**" is "db/*/**"
+        if (!segments.isEmpty() && segments.get(segments.size() - 1).equals("**")) {
+            segments.add(segments.size() - 1, "*");
+        }
+
+        Node node = root;
+        for (String segment : segments) {
+            if (segment.equals("**")) {
+                if (node.globstar == null) {
+                    node.globstar = new Node();
+                    node.globstar.selfLoop = true;
+                }
+                node = node.globstar;
+            } else if (isWildcard(segment)) {
+                Node next = node.wildcard.get(segment);
+                if (next == null) {
+                    next = new Node();
+                    node.wildcard.put(segment, next);
+                    node.wildcardPatterns.put(segment, Pattern.compile(segmentRegex(segment)));
+                }
+                node = next;
+            } else {
+                node = node.literal.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+        node.accepts.set(globIndex);
+    }
+
+    /**
+     * Expand {a,b} alternations, including nested ones, into plain globs:
+     * "{src/main,lib}/*.java" -> ["src/main/*.java", "lib/*.java"]. A brace without a
+     * matching close is kept as a literal character, so the results hold no groups.
+     */
+    static List<String> expandBraces(String glob) {
+        int open = glob.indexOf('{');
+        if (open < 0) return List.of(glob);
+        int depth = 0;
+        int start = open + 1;
+        List<String> alternatives = new ArrayList<>();
+        for (int i = open; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                alternatives.add(glob.substring(start, i));
+                String head = glob.substring(0, open);
+                String tail = glob.substring(i + 1);
+                List<String> expanded = new ArrayList<>();
+                for (String alternative : alternatives) {
+                    expanded.addAll(expandBraces(head + alternative + tail));
+                }
+                return expanded;
+            } else if (c == ',' && depth == 1) {
+                alternatives.add(glob.substring(start, i));
+                start = i + 1;
+            }
+        }
+        // Unbalanced: keep this brace literally and expand any groups after it
+        List<String> expanded = new ArrayList<>();
+        for (String rest : expandBraces(glob.substring(open + 1))) {
+            expanded.add(glob.substring(0, open + 1) + rest);
+        }
+        return expanded;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('[') >= 0;
+    }
+
+    private static String segmentRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        boolean inClass = false;
+        for (char c : segment.toCharArray()) {
+            if (inClass) {
+                regex.append(c == '!' && regex.charAt(regex.length() - 1) == '[' ? '^' : c);
+                if (c == ']') inClass = false;
+                continue;
+            }
+            switch (c) {
+                case '*': regex.append("[^/]*"); break;
+                case '?': regex.append("[^/]"); break;
+                case '[': regex.append('['); inClass = true; break;
+                default:
+                    // Braces left after expandBraces are literal
+                    if ("\\.^$|()+{}".indexOf(c) >= 0) regex.append('\\');
+                    regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    // ── Matching ─────────────────────────────────────────────────────────────
+
+    public State start() {
+        return new State(closure(List.of(root)));
+    }
+
+    /**
+     * Consume one path segment.
+     */
+    public State step(State state, String segment) {
+        List<Node> next = new ArrayList<>();
+        for (Node node : state.nodes) {
+            Node literal = node.literal.get(segment);
+            if (literal != null) next.add(literal);
+            for (Map.Entry<String, Pattern> wildcard : node.wildcardPatterns.entrySet()) {
+                if (wildcard.getValue().matcher(segment).matches()) {
+                    next.add(node.wildcard.get(wildcard.getKey()));
+                }
+            }
+        }
+        // A globstar node may consume any number of segments
+        for (Node node : state.nodes) {
+            if (node.selfLoop) next.add(node);
+        }
+        return new State(closure(next));
+    }
+
+    private List<Node> closure(List<Node> nodes) {
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> pending = new ArrayDeque<>(nodes);
+        List<Node> result = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (!seen.add(node)) continue;
+            result.add(node);
+            if (node.globstar != null) pending.push(node.globstar);
+        }
+        return result;
+    }
+
+    /**
+     * Rules matching a state reached by consuming a whole path.
+     */
+    public List<Match> matches(State state) {
+        BitSet accepted = new BitSet();
+        for (Node node : state.nodes) accepted.or(node.accepts);
+        List<Match> result = new ArrayList<>();
+        for (int i = accepted.nextSetBit(0); i >= 0; i = accepted.nextSetBit(i + 1)) {
+            result.add(new Match(globRule.get(i), globText.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Rules matching a repository-relative path such as "db/migration/V1__init.sql".
+     */
+    public List<Match> match(String relativePath) {
+        State state = start();
+        for (String segment : relativePath.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            state = step(state, segment);
+            if (state.isDead()) return List.of();
+        }
+        return matches(state);
+    }
+
+    /**
+     * Walk a repository and report every file matched by at least one rule.
+     * Subtrees that no glob can reach are skipped without being listed.
+     */
+    public void walk(Path repoRoot, BiConsumer<Path, List<Match>> consumer) throws IOException {
+        Deque<State> states = new ArrayDeque<>();
+        Files.walkFileTree(repoRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(repoRoot)) {
+                    states.push(start());
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = dir.getFileName().toString();
+                State state = ConfigResolver.SKIP_DIRS.contains(name) ? null : step(states.peek(), name);
+                if (state == null || state.isDead()) return FileVisitResult.SKIP_SUBTREE;
+                states.push(state);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                List<Match> matched = matches(step(states.peek(), file.getFileName().toString()));
+                if (!matched.isEmpty()) consumer.accept(repoRoot.relativize(file), matched);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                states.pop();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public List<Rule> rules() {
+        return rules;
+    }
+}
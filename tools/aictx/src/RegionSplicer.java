@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Replaces the aictx-managed region of a user-owned file, leaving everything else untouched.
+ *
+ * The region is delimited by lines containing the begin/end markers, in whatever comment
+ * syntax suits the file:
+ * <pre>
+ * &lt;!-- aictx:begin --&gt;
+ * ...generated content...
+ * &lt;!-- aictx:end --&gt;
+ * </pre>
+ * The file is scanned as raw bytes and the unchanged ranges before and after the region are
+ * copied channel-to-channel, so large files are never decoded or held in memory.
+ */
+public class RegionSplicer {
+
+    static final String BEGIN_MARKER = "aictx:begin";
+    static final String END_MARKER = "aictx:end";
+
+    private static final byte[] BEGIN = BEGIN_MARKER.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = END_MARKER.getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Byte range of the region content: from the line after the begin marker
+     * up to the start of the end marker line.
+     */
+    public static final class Region {
+        public final long start;
+        public final long end;
+
+        Region(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Find the managed region of a file, or null if it has no complete begin/end pair.
+     */
+    public static Region locate(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long pos = 0;
+            long lineStart = 0;
+            long regionStart = -1;
+            int matched = 0;
+            boolean awaitingBeginEol = false;
+
+            while (channel.read(buf) > 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b == '\n') {
+                        lineStart = pos + 1;
+                        if (awaitingBeginEol) {
+                            regionStart = pos + 1;
+                            awaitingBeginEol = false;
+                        }
+                    }
+                    if (!awaitingBeginEol) {
+                        byte[] marker = regionStart < 0 ? BEGIN : END;
+                        matched = b == marker[matched] ? matched + 1 : (b == marker[0] ? 1 : 0);
+                        if (matched == marker.length) {
+                            matched = 0;
+                            if (regionStart < 0) {
+                                awaitingBeginEol = true;
+                            } else {
+                                return new Region(regionStart, lineStart);
+                            }
+                        }
+                    }
+                    pos++;
+                }
+                buf.clear();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Replace the region content of file with content, atomically.
+     */
+    public static void splice(Path file, Region region, String content) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        // Created like a regular file, then given the original's permissions: the file is user-owned
+        Path tmp = dir.resolve("." + file.getFileName() + "." + System.nanoTime() + ".aictx.tmp");
+        try {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                transfer(in, 0, region.start, out);
+                ByteBuffer body = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (body.hasRemaining()) out.write(body);
+                transfer(in, region.end, in.size() - region.end, out);
+            }
+            if (Files.getFileStore(file).supportsFileAttributeView("posix")) {
+                Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(file));
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            done += in.transferTo(position + done, count - done, out);
+        }
+    }
+
+    /**
+     * Region body for a rendered output: drops the whole-file managed marker line
+     * (the surrounding file is user-owned) and ends with a newline.
+     */
+    public static String regionContent(String rendered) {
+        String body = rendered;
+        int eol = body.indexOf('\n');
+        if (eol >= 0 && body.substring(0, eol).contains(Generator.MANAGED_MARKER)) {
+            body = body.substring(eol + 1);
+        }
+        return body.endsWith("\n") ? body : body + "\n";
+    }
+}
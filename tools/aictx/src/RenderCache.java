@@ -0,0 +1,169 @@
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Shared on-disk cache of rendered outputs, reused across repositories with identical configs.
+ *
+ * Entries are keyed by the digest of the normalized ContextModel, the context library
+ * fingerprint (a content digest) and the CLI version. Layer locations are left out of the
+ * key, so identical configs share entries across checkouts. Each entry is a single JSON
+ * file published with an atomic rename, so concurrent processes never see partial entries.
+ * Hits refresh the entry's modification time; when the cache grows past its size bound the
+ * least recently used entries are evicted under an inter-process file lock.
+ */
+public class RenderCache {
+
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .build();
+
+    private final Path dir;
+    private final long maxBytes;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        @JsonProperty("files")
+        public Map<String, String> files = new LinkedHashMap<>();
+
+        @JsonProperty("warnings")
+        public List<String> warnings = new ArrayList<>();
+
+        /** Generator#getSources() of the render; null in entries from older versions. */
+        @JsonProperty("sources")
+        public List<String> sources;
+    }
+
+    public RenderCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache under ~/.aictx/render-cache, bounded by AICTX_RENDER_CACHE_MAX_MB (default 64).
+     */
+    public static RenderCache defaultCache() {
+        long maxBytes = DEFAULT_MAX_BYTES;
+        String maxMb = System.getenv("AICTX_RENDER_CACHE_MAX_MB");
+        if (maxMb != null) {
+            try {
+                maxBytes = Long.parseLong(maxMb.trim()) * 1024 * 1024;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return new RenderCache(Path.of(System.getProperty("user.home"), ".aictx", "render-cache"), maxBytes);
+    }
+
+    /**
+     * Cache key for rendering ctx against index with this CLI version.
+     */
+    public static String key(ContextModel ctx, ContextIndex index) throws IOException {
+        return key(ctx, index, "");
+    }
+
+    /**
+     * Key for outputs that also depend on the target repository, e.g. which directories exist.
+     */
+    public static String key(ContextModel ctx, ContextIndex index, String repoState) throws IOException {
+        ObjectNode tree = MAPPER.valueToTree(ctx);
+        // Resolved layer paths differ per checkout; the fingerprint covers the layers' content
+        tree.remove("contextLayers");
+        String normalized = MAPPER.writeValueAsString(tree);
+        String material = normalized + "\n" + index.fingerprint() + "\n" + aictx.VERSION + "\n" + repoState;
+        return DriftChecker.hex(DriftChecker.sha256(material.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Look up an entry; returns null on a miss or if the entry disappears concurrently.
+     */
+    public Entry get(String key) {
+        Path file = entryFile(key);
+        try {
+            Entry entry = MAPPER.readValue(file.toFile(), Entry.class);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store an entry. Failures are ignored: the cache is an optimization only.
+     */
+    public void put(String key, Map<String, String> files, List<String> warnings, Collection<String> sources) {
+        Entry entry = new Entry();
+        entry.files.putAll(files);
+        entry.warnings.addAll(warnings);
+        entry.sources = new ArrayList<>(sources);
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try {
+                MAPPER.writeValue(tmp.toFile(), entry);
+                Files.move(tmp, entryFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            evict();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Path entryFile(String key) {
+        return dir.resolve(key + ".json");
+    }
+
+    /**
+     * Delete least recently used entries until the cache fits its bound.
+     * Skipped when another process currently holds the eviction lock.
+     */
+    void evict() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(dir.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) return;
+
+            List<Path> entries;
+            try (Stream<Path> list = Files.list(dir)) {
+                entries = list.filter(p -> p.getFileName().toString().endsWith(".json"))
+                        .collect(Collectors.toList());
+            }
+            Map<Path, Long> sizes = new HashMap<>();
+            Map<Path, Long> used = new HashMap<>();
+            long total = 0;
+            for (Path p : entries) {
+                try {
+                    sizes.put(p, Files.size(p));
+                    used.put(p, Files.getLastModifiedTime(p).toMillis());
+                    total += sizes.get(p);
+                } catch (IOException ignored) {
+                    // removed by another process
+                }
+            }
+            if (total <= maxBytes) return;
+
+            List<Path> oldestFirst = new ArrayList<>(sizes.keySet());
+            oldestFirst.sort(Comparator.comparing(used::get));
+            for (Path p : oldestFirst) {
+                if (total <= maxBytes) break;
+                Files.deleteIfExists(p);
+                total -= sizes.get(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Detects a repository's type from build markers and suggests a config for it.
+ *
+ * The scan is a level-by-level walk: each depth is listed in parallel, build output and
+ * VCS directories are pruned, and the walk stops at the first depth that contains a marker
+ * (shallower evidence wins) or at the depth bound.
+ */
+public class RepoDetector {
+
+    // Marker file name -> repo type
+    static final Map<String, String> MARKERS = Map.of(
+            "pom.xml", "java-service",
+            "build.gradle", "java-service",
+            "build.gradle.kts", "java-service",
+            "settings.gradle", "java-service",
+            "settings.gradle.kts", "java-service",
+            "pubspec.yaml", "flutter-app");
+
+    public static final class Detection {
+        public final String repoType;
+        public final List<String> evidence;
+
+        Detection(String repoType, List<String> evidence) {
+            this.repoType = repoType;
+            this.evidence = evidence;
+        }
+    }
+
+    /**
+     * Detect the repo type, or return a detection with a null repoType if no marker was found.
+     */
+    public static Detection detect(Path root, int maxDepth) throws IOException {
+        List<Path> level = List.of(root);
+        for (int depth = 0; depth <= maxDepth && !level.isEmpty(); depth++) {
+            List<Path> markers = level.parallelStream()
+                    .flatMap(dir -> MARKERS.keySet().stream().map(dir::resolve))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (!markers.isEmpty()) {
+                return conclude(root, markers);
+            }
+            level = level.parallelStream()
+                    .flatMap(RepoDetector::subdirectories)
+                    .collect(Collectors.toList());
+        }
+        return new Detection(null, List.of());
+    }
+
+    private static Detection conclude(Path root, List<Path> markers) {
+        Map<String, Integer> votes = new HashMap<>();
+        List<String> evidence = new ArrayList<>();
+        for (Path marker : markers) {
+            votes.merge(MARKERS.get(marker.getFileName().toString()), 1, Integer::sum);
+            evidence.add(root.relativize(marker).toString().replace('\\', '/'));
+        }
+        String repoType = votes.entrySet().stream()
+                .max(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+        return new Detection(repoType, evidence);
+    }
+
+    private static Stream<Path> subdirectories(Path dir) {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(Files::isDirectory)
+                    .filter(p -> !ConfigResolver.SKIP_DIRS.contains(p.getFileName().toString()))
+                    .collect(Collectors.toList())
+                    .stream();
+        } catch (IOException e) {
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Build a config for repoType: every pack whose appliesToRepoTypes lists it, their default
+     * globals, skills and toolset, and only the path rules whose target directories exist.
+     */
+    public static ContextModel suggestConfig(ContextIndex index, Path root, String repoType) throws IOException {
+        ContextModel ctx = new ContextModel().withDefaults();
+        ctx.repoType = repoType;
+
+        List<String> packIds = index.ids().stream()
+                .filter(id -> id.matches("packs/[^/]+/pack\\.yaml"))
+                .map(id -> id.substring("packs/".length(), id.length() - "/pack.yaml".length()))
+                .sorted()
+                .collect(Collectors.toList());
+
+        Set<String> globals = new LinkedHashSet<>();
+        Set<String> skills = new LinkedHashSet<>();
+        List<String> absentPathRules = new ArrayList<>();
+        for (String packId : packIds) {
+            // Defaults include those inherited through extends
+            PackModel pack = PackGraph.resolve(index, packId);
+            if (repoType == null || !pack.appliesToRepoTypes.contains(repoType)) continue;
+
+            ctx.packs.add(packId);
+            globals.addAll(pack.defaultGlobals);
+            skills.addAll(pack.defaultSkills);
+            if (ctx.mcp.toolset == null) ctx.mcp.toolset = pack.defaultMcpToolset;
+            for (PackModel owner : PackGraph.closure(index, List.of(packId)).packs) {
+                for (String pathRule : owner.pathRules) {
+                    Path ruleFile = index.resolve("packs/" + owner.id + "/" + pathRule);
+                    if (ruleFile == null || !targetsExist(root, Frontmatter.strings(Frontmatter.read(ruleFile), "applyTo"))) {
+                        absentPathRules.add(PackModel.pathRuleId(pathRule));
+                    }
+                }
+            }
+        }
+        ctx.globals.addAll(globals);
+        ctx.skills.addAll(skills);
+        // Exclude only the rules with nothing to apply to, so rules added to a pack later still apply
+        absentPathRules.forEach(ruleId -> ctx.pathRules.add("!" + ruleId));
+        return ctx;
+    }
+
+    /**
+     * Whether any glob's literal target (directory or file) exists. Globs starting with a
+     * wildcard can match anywhere and count as present.
+     */
+    private static boolean targetsExist(Path root, List<String> applyTo) {
+        for (String value : applyTo) {
+            for (String applyToGlob : PathRuleMatcher.splitApplyTo(value)) {
+                for (String glob : PathRuleMatcher.expandBraces(applyToGlob)) {
+                    String prefix = PathRuleMatcher.literalPrefix(glob);
+                    if (prefix.isEmpty()) {
+                        if (glob.contains("*") || glob.contains("?") || Files.exists(root.resolve(glob))) return true;
+                    } else if (Files.isDirectory(root.resolve(prefix))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
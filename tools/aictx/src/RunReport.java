@@ -0,0 +1,330 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Machine-readable record of one setup or fetch-context run (--report, --metrics).
+ *
+ * The JSON report lists every module with the outcome and size of each file, its warnings
+ * and timings, plus the context library that was used. The metrics file is in Prometheus
+ * text format for node_exporter's textfile collector. Both are published with an atomic
+ * rename, so a scrape never sees a partial file.
+ */
+public class RunReport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String command;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Object> contextLibrary = new LinkedHashMap<>();
+    private final List<ModuleRun> modules = new ArrayList<>();
+    private Map<String, Object> download;
+    private boolean dryRun;
+    private String error;
+    private int exitCode;
+    private long durationMillis;
+
+    /**
+     * One module of a setup run.
+     */
+    static final class ModuleRun {
+        final String module;
+        final long durationMillis;
+        final String error;
+        final String libraryFingerprint;
+        final Map<String, OutputSink.Outcome> outcomes;
+        final Map<String, Integer> bytes;
+        final List<String> warnings;
+        final Map<String, Generator.PrefixDigest> stablePrefixes;
+
+        ModuleRun(String module, long durationMillis, String error, String libraryFingerprint,
+                  Map<String, OutputSink.Outcome> outcomes, Map<String, Integer> bytes,
+                  List<String> warnings, Map<String, Generator.PrefixDigest> stablePrefixes) {
+            this.module = module;
+            this.durationMillis = durationMillis;
+            this.error = error;
+            this.libraryFingerprint = libraryFingerprint;
+            this.outcomes = outcomes;
+            this.bytes = bytes;
+            this.warnings = warnings;
+            this.stablePrefixes = stablePrefixes;
+        }
+
+        long count(OutputSink.Outcome outcome) {
+            return outcomes.values().stream().filter(o -> o == outcome).count();
+        }
+
+        long totalBytes() {
+            return bytes.values().stream().mapToLong(Integer::longValue).sum();
+        }
+
+        /** Files that were (or, in a dry run, would be) changed on disk. */
+        long drift() {
+            return count(OutputSink.Outcome.WRITTEN) + count(OutputSink.Outcome.REGION);
+        }
+    }
+
+    public RunReport(String command) {
+        this.command = command;
+    }
+
+    public RunReport withDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    /**
+     * Record the context library: its root and, for the downloaded cache, where and when it was fetched.
+     */
+    public void contextLibrary(Path root) {
+        if (root == null) return;
+        contextLibrary.put("root", root.toAbsolutePath().normalize().toString());
+        ContextCache cache = ContextCache.fromEnvironment();
+        if (cache.holds(root)) {
+            contextLibrary.putAll(cache.metadata());
+        }
+    }
+
+    /**
+     * Record a generated (or previewed) module. Call after generate.
+     */
+    public void module(Path moduleDir, ContextModel ctx, ContextIndex index, Generator gen, long startNanos) throws IOException {
+        Map<String, Integer> bytes = new LinkedHashMap<>();
+        gen.render().forEach((path, content) -> bytes.put(path, content.getBytes(StandardCharsets.UTF_8).length));
+        modules.add(new ModuleRun(moduleName(moduleDir), millisSince(startNanos), null, index.fingerprint(),
+                new LinkedHashMap<>(gen.getResults()), bytes, new ArrayList<>(gen.getWarnings()),
+                ctx.outputs.stableLayout() ? gen.stablePrefixes() : Map.of()));
+    }
+
+    /**
+     * Record a module whose config could not be loaded.
+     */
+    public void failedModule(Path moduleDir, String error, long startNanos) {
+        modules.add(new ModuleRun(moduleName(moduleDir), millisSince(startNanos), error, null,
+                Map.of(), Map.of(), List.of(), Map.of()));
+    }
+
+    /**
+     * Record a context library download (fetch-context).
+     */
+    public void download(String url, ArchiveDownloader.Result result) {
+        download = new LinkedHashMap<>();
+        download.put("url", url);
+        download.put("notModified", result.notModified);
+        download.put("bytes", result.size);
+        download.put("resumedBytes", result.resumedBytes);
+        download.put("ranged", result.ranged);
+        if (result.etag != null) download.put("etag", result.etag);
+    }
+
+    /**
+     * Record the error that ended the run.
+     */
+    public void failed(Exception e) {
+        error = e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    public void finish(int exitCode) {
+        this.exitCode = exitCode;
+        this.durationMillis = millisSince(startNanos);
+    }
+
+    /**
+     * Write the report and/or metrics file (either may be null). Returns false, after
+     * printing why, if a file could not be written.
+     */
+    public boolean write(Path reportFile, Path metricsFile) {
+        boolean ok = true;
+        try {
+            if (reportFile != null) {
+                writeAtomically(reportFile, MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(toJson()));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write report " + reportFile + ": " + e.getMessage());
+            ok = false;
+        }
+        try {
+            if (metricsFile != null) {
+                writeAtomically(metricsFile, toPrometheus().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics " + metricsFile + ": " + e.getMessage());
+            ok = false;
+        }
+        return ok;
+    }
+
+    // ── JSON ─────────────────────────────────────────────────────────────────
+
+    Map<String, Object> toJson() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("command", command);
+        report.put("aictxVersion", aictx.VERSION);
+        report.put("startedAt", startedAt.toString());
+        report.put("durationMillis", durationMillis);
+        report.put("exitCode", exitCode);
+        report.put("success", exitCode == 0);
+        if (error != null) report.put("error", error);
+        if ("setup".equals(command)) report.put("dryRun", dryRun);
+        report.put("contextLibrary", contextLibrary);
+        if (download != null) report.put("download", download);
+        if (!"setup".equals(command)) return report;
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        for (OutputSink.Outcome outcome : OutputSink.Outcome.values()) {
+            totals.put(outcome.name().toLowerCase(Locale.ROOT), modules.stream().mapToLong(m -> m.count(outcome)).sum());
+        }
+        totals.put("bytes", modules.stream().mapToLong(ModuleRun::totalBytes).sum());
+        totals.put("warnings", modules.stream().mapToLong(m -> m.warnings.size()).sum());
+        report.put("totals", totals);
+
+        List<Map<String, Object>> moduleList = new ArrayList<>();
+        for (ModuleRun run : modules) {
+            Map<String, Object> module = new LinkedHashMap<>();
+            module.put("module", run.module);
+            module.put("durationMillis", run.durationMillis);
+            if (run.error != null) {
+                module.put("error", run.error);
+                moduleList.add(module);
+                continue;
+            }
+            module.put("libraryFingerprint", run.libraryFingerprint);
+            List<Map<String, Object>> files = new ArrayList<>();
+            run.outcomes.forEach((path, outcome) -> {
+                Map<String, Object> file = new LinkedHashMap<>();
+                file.put("path", path);
+                file.put("status", outcome.name().toLowerCase(Locale.ROOT));
+                file.put("bytes", run.bytes.getOrDefault(path, 0));
+                files.add(file);
+            });
+            module.put("files", files);
+            module.put("warnings", run.warnings);
+            if (!run.stablePrefixes.isEmpty()) {
+                Map<String, Object> prefixes = new LinkedHashMap<>();
+                run.stablePrefixes.forEach((path, prefix) -> prefixes.put(path, Map.of("bytes", prefix.bytes, "sha256", prefix.sha256)));
+                module.put("stablePrefixes", prefixes);
+            }
+            moduleList.add(module);
+        }
+        report.put("modules", moduleList);
+        return report;
+    }
+
+    // ── Prometheus ───────────────────────────────────────────────────────────
+
+    String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        String run = "command=\"" + command + "\"";
+
+        gauge(sb, "aictx_run_duration_seconds", "Wall time of the last run.");
+        sample(sb, "aictx_run_duration_seconds", run, durationMillis / 1000.0);
+        gauge(sb, "aictx_run_success", "1 if the last run exited with status 0.");
+        sample(sb, "aictx_run_success", run, exitCode == 0 ? 1 : 0);
+        gauge(sb, "aictx_run_timestamp_seconds", "Start of the last run, in Unix time.");
+        sample(sb, "aictx_run_timestamp_seconds", run, startedAt.getEpochSecond());
+
+        Object fetchedAt = contextLibrary.get("fetchedAt");
+        if (fetchedAt instanceof Number) {
+            gauge(sb, "aictx_context_library_age_seconds", "Age of the cached context library when the run started.");
+            sample(sb, "aictx_context_library_age_seconds", run,
+                    Math.max(0, startedAt.toEpochMilli() - ((Number) fetchedAt).longValue()) / 1000.0);
+        }
+
+        if (download != null) {
+            gauge(sb, "aictx_download_bytes", "Size of the downloaded context archive.");
+            sample(sb, "aictx_download_bytes", run, ((Number) download.get("bytes")).doubleValue());
+            gauge(sb, "aictx_download_resumed_bytes", "Bytes reused from an interrupted download.");
+            sample(sb, "aictx_download_resumed_bytes", run, ((Number) download.get("resumedBytes")).doubleValue());
+        }
+
+        if (!modules.isEmpty()) {
+            gauge(sb, "aictx_module_duration_seconds", "Time spent loading and generating a module.");
+            for (ModuleRun m : modules) {
+                sample(sb, "aictx_module_duration_seconds", moduleLabels(m), m.durationMillis / 1000.0);
+            }
+            gauge(sb, "aictx_module_success", "1 if the module config loaded and was generated.");
+            for (ModuleRun m : modules) {
+                sample(sb, "aictx_module_success", moduleLabels(m), m.error == null ? 1 : 0);
+            }
+            gauge(sb, "aictx_files", "Generated files by outcome.");
+            for (ModuleRun m : modules) {
+                for (OutputSink.Outcome outcome : OutputSink.Outcome.values()) {
+                    sample(sb, "aictx_files", moduleLabels(m) + ",status=\"" + outcome.name().toLowerCase(Locale.ROOT) + "\"", m.count(outcome));
+                }
+            }
+            gauge(sb, "aictx_drift_files", "Files that were out of date and got (or, in a dry run, would get) rewritten.");
+            for (ModuleRun m : modules) {
+                sample(sb, "aictx_drift_files", moduleLabels(m), m.drift());
+            }
+            gauge(sb, "aictx_output_bytes", "Total size of the rendered outputs.");
+            for (ModuleRun m : modules) {
+                sample(sb, "aictx_output_bytes", moduleLabels(m), m.totalBytes());
+            }
+            gauge(sb, "aictx_warnings", "Generator warnings, e.g. missing packs or skills.");
+            for (ModuleRun m : modules) {
+                sample(sb, "aictx_warnings", moduleLabels(m), m.warnings.size());
+            }
+        }
+        return sb.toString();
+    }
+
+    private String moduleLabels(ModuleRun m) {
+        return "command=\"" + command + "\",module=\"" + escapeLabel(m.module) + "\",dry_run=\"" + dryRun + "\"";
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    /**
+     * Write through a temp file in the same directory and rename it over the target. The temp
+     * file is created like a regular file (umask applies) and takes the target's permissions
+     * if it exists, so reports stay readable by CI tooling running as another user.
+     */
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve("." + target.getFileName() + "." + System.nanoTime() + ".aictx.tmp");
+        try {
+            Files.write(tmp, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView("posix")) {
+                Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String moduleName(Path moduleDir) {
+        String name = moduleDir.normalize().toString();
+        return name.isEmpty() ? "." : name;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
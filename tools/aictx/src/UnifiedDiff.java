@@ -0,0 +1,237 @@
+import java.util.*;
+
+/**
+ * Line-based unified diff using Myers' O(ND) algorithm in its linear-space form.
+ *
+ * Common prefixes and suffixes are stripped first, then the "middle snake" of each remaining
+ * range is found by searching forward and backward simultaneously and the halves are diffed
+ * recursively. Memory stays O(N + M) and typical AGENTS.md edits (a few changed sections in
+ * thousands of lines) cost close to O(N + M) time. Lines are compared as interned ints.
+ */
+public class UnifiedDiff {
+
+    static final int CONTEXT = 3;
+
+    private final Lines oldLines;
+    private final Lines newLines;
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+
+    private UnifiedDiff(Lines oldLines, Lines newLines) {
+        this.oldLines = oldLines;
+        this.newLines = newLines;
+        Map<String, Integer> ids = new HashMap<>();
+        this.a = oldLines.ids(ids);
+        this.b = newLines.ids(ids);
+        this.deleted = new boolean[a.length];
+        this.inserted = new boolean[b.length];
+        compare(0, a.length, 0, b.length);
+    }
+
+    /**
+     * Compute the line diff between two texts. CRLF line endings are compared as LF; a
+     * missing newline at the end counts as a change of the last line.
+     */
+    public static UnifiedDiff of(String oldText, String newText) {
+        return new UnifiedDiff(new Lines(oldText), new Lines(newText));
+    }
+
+    public int added() {
+        return count(inserted);
+    }
+
+    public int removed() {
+        return count(deleted);
+    }
+
+    private static int count(boolean[] flags) {
+        int n = 0;
+        for (boolean flag : flags) if (flag) n++;
+        return n;
+    }
+
+    // ── Myers ────────────────────────────────────────────────────────────────
+
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(inserted, bLo, bHi, true);
+            return;
+        }
+        if (bLo == bHi) {
+            Arrays.fill(deleted, aLo, aHi, true);
+            return;
+        }
+
+        int[] split = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, split[0], bLo, split[1]);
+        compare(split[2], aHi, split[3], bHi);
+    }
+
+    /**
+     * Find the middle snake of a[aLo..aHi) vs b[bLo..bHi).
+     * Returns {aStart, bStart, aEnd, bEnd}: the ranges before and after the snake
+     * each need roughly half of the edits.
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1 && x + backward[offset + kb] >= n) {
+                    return new int[]{aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + forward[offset + kf] >= n) {
+                    return new int[]{aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    // ── Formatting ───────────────────────────────────────────────────────────
+
+    /**
+     * Unified diff with "--- a/path" / "+++ b/path" headers and 3 lines of context,
+     * or "" if the texts are equal.
+     */
+    public String format(String path) {
+        // Edit script: ' ' equal, '-' deleted, '+' inserted, in output order
+        List<int[]> ops = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && deleted[i]) {
+                ops.add(new int[]{'-', i++, j});
+            } else if (j < b.length && inserted[j]) {
+                ops.add(new int[]{'+', i, j++});
+            } else {
+                ops.add(new int[]{' ', i++, j++});
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        int pos = 0;
+        while (pos < ops.size()) {
+            while (pos < ops.size() && ops.get(pos)[0] == ' ') pos++;
+            if (pos == ops.size()) break;
+
+            int start = Math.max(0, pos - CONTEXT);
+            int end = pos;
+            // Extend the hunk while the next change is within 2 * CONTEXT equal lines
+            while (end < ops.size()) {
+                int next = end;
+                while (next < ops.size() && ops.get(next)[0] != ' ') next++;
+                int equalRun = next;
+                while (equalRun < ops.size() && ops.get(equalRun)[0] == ' ') equalRun++;
+                if (equalRun < ops.size() && equalRun - next <= 2 * CONTEXT) {
+                    end = equalRun;
+                } else {
+                    end = Math.min(ops.size(), next + CONTEXT);
+                    break;
+                }
+            }
+
+            if (out.length() == 0) {
+                out.append("--- a/").append(path).append('\n');
+                out.append("+++ b/").append(path).append('\n');
+            }
+            int oldStart = ops.get(start)[1];
+            int newStart = ops.get(start)[2];
+            int oldCount = 0;
+            int newCount = 0;
+            for (int p = start; p < end; p++) {
+                int op = ops.get(p)[0];
+                if (op != '+') oldCount++;
+                if (op != '-') newCount++;
+            }
+            out.append("@@ -").append(range(oldStart, oldCount))
+                    .append(" +").append(range(newStart, newCount)).append(" @@\n");
+            for (int p = start; p < end; p++) {
+                int[] op = ops.get(p);
+                if (op[0] == '+') {
+                    appendLine(out, '+', newLines, op[2]);
+                } else {
+                    appendLine(out, (char) op[0], oldLines, op[1]);
+                }
+            }
+            pos = end;
+        }
+        return out.toString();
+    }
+
+    private static String range(int start, int count) {
+        return count == 0 ? start + ",0" : (start + 1) + "," + count;
+    }
+
+    private static void appendLine(StringBuilder out, char prefix, Lines lines, int index) {
+        out.append(prefix).append(lines.text[index]).append('\n');
+        if (index == lines.text.length - 1 && !lines.trailingNewline) {
+            out.append("\\ No newline at end of file\n");
+        }
+    }
+
+    private static final class Lines {
+        final String[] text;
+        final boolean trailingNewline;
+
+        Lines(String content) {
+            String normalized = content.replace("\r\n", "\n");
+            trailingNewline = normalized.isEmpty() || normalized.endsWith("\n");
+            String body = trailingNewline && !normalized.isEmpty()
+                    ? normalized.substring(0, normalized.length() - 1) : normalized;
+            text = body.isEmpty() && normalized.isEmpty() ? new String[0] : body.split("\n", -1);
+        }
+
+        int[] ids(Map<String, Integer> ids) {
+            int[] result = new int[text.length];
+            for (int i = 0; i < text.length; i++) {
+                // A last line without its newline differs from the same line with one; lines
+                // never contain '\n', so the key cannot collide
+                String key = i == text.length - 1 && !trailingNewline ? text[i] + "\n" : text[i];
+                result[i] = ids.computeIfAbsent(key, k -> ids.size());
+            }
+            return result;
+        }
+    }
+}
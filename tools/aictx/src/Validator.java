@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Referential-integrity and shape checks for a context library and for configs.
+ *
+ * Every file is checked as an independent task against one shared ContextIndex;
+ * tasks run in parallel and report into a shared diagnostics queue.
+ */
+public class Validator {
+
+    public enum Severity { ERROR, WARNING }
+
+    public static final class Diagnostic {
+        public final Severity severity;
+        public final String file;
+        public final String code;
+        public final String message;
+
+        Diagnostic(Severity severity, String file, String code, String message) {
+            this.severity = severity;
+            this.file = file;
+            this.code = code;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return severity + " " + file + ": [" + code + "] " + message;
+        }
+    }
+
+    private static final Pattern PACK_YAML = Pattern.compile("packs/([^/]+)/pack\\.yaml");
+    private static final Pattern SKILL_FILE = Pattern.compile("(?:packs/[^/]+/)?skills/([^/]+)\\.skill\\.md");
+    private static final Pattern GLOBAL_FILE = Pattern.compile("globals/([^/]+)\\.md");
+
+    private final ContextIndex index;
+    private final Queue<Diagnostic> diagnostics = new ConcurrentLinkedQueue<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Map<String, Set<String>> skillFiles = new ConcurrentHashMap<>();
+    private Set<String> extendedPacks;
+
+    public Validator(ContextIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Queue checks for every pack, skill, global and catalog in the library.
+     */
+    public Validator library() {
+        for (String id : index.ids()) {
+            Matcher pack = PACK_YAML.matcher(id);
+            if (pack.matches()) {
+                tasks.add(() -> checkPack(id, pack.group(1)));
+                continue;
+            }
+            Matcher skill = SKILL_FILE.matcher(id);
+            if (skill.matches()) {
+                tasks.add(() -> checkSkill(id, skill.group(1)));
+                continue;
+            }
+            if (GLOBAL_FILE.matcher(id).matches()) {
+                tasks.add(() -> checkGlobal(id));
+            }
+        }
+        for (Path layer : index.layers()) {
+            Path catalog = layer.resolve(ContextIndex.CATALOG_ID);
+            if (Files.exists(catalog)) {
+                tasks.add(() -> checkCatalog(catalog));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Queue checks for a resolved config.
+     */
+    public Validator config(String file, ContextModel ctx) {
+        tasks.add(() -> checkConfig(file, ctx));
+        return this;
+    }
+
+    /**
+     * Run all queued checks in parallel and return the diagnostics sorted by file.
+     */
+    public List<Diagnostic> run() {
+        tasks.parallelStream().forEach(task -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                error("-", "internal", e.toString());
+            }
+        });
+        // Needs every skill collected, so runs after the parallel phase
+        skillFiles.forEach((skillId, files) -> {
+            if (files.size() > 1) {
+                for (String file : files) {
+                    error(file, "duplicate-id", "skill id '" + skillId + "' is defined in " + files.size() + " files");
+                }
+            }
+        });
+        List<Diagnostic> result = new ArrayList<>(diagnostics);
+        result.sort(Comparator.comparing((Diagnostic d) -> d.file).thenComparing(d -> d.code).thenComparing(d -> d.message));
+        return result;
+    }
+
+    public static boolean hasErrors(List<Diagnostic> diagnostics) {
+        return diagnostics.stream().anyMatch(d -> d.severity == Severity.ERROR);
+    }
+
+    // ── Library ──────────────────────────────────────────────────────────────
+
+    private void checkPack(String file, String dirName) {
+        PackModel pack;
+        try {
+            pack = PackModel.load(index.resolve(file));
+        } catch (IOException e) {
+            error(file, "parse", e.getMessage());
+            return;
+        }
+        if (pack == null) {
+            error(file, "parse", "empty pack.yaml");
+            return;
+        }
+        if (!dirName.equals(pack.id)) {
+            error(file, "pack-id", "id '" + pack.id + "' does not match directory '" + dirName + "'");
+        }
+        // Base packs that only exist to be extended need no repo types of their own
+        if ((pack.appliesToRepoTypes == null || pack.appliesToRepoTypes.isEmpty()) && !extendedPacks().contains(dirName)) {
+            warning(file, "repo-types", "appliesToRepoTypes is empty");
+        }
+        List<PackModel> lineage = List.of(pack);
+        try {
+            PackGraph.Closure closure = PackGraph.closure(index, List.of(dirName));
+            closure.problems.forEach(problem -> error(file, problem.code, problem.message));
+            if (!closure.packs.isEmpty()) lineage = closure.packs;
+        } catch (IOException e) {
+            error(file, "missing-parent", "parent pack cannot be parsed: " + e.getMessage());
+        }
+        for (String globalId : orEmpty(pack.defaultGlobals)) {
+            if (!index.exists("globals/" + globalId + ".md")) {
+                error(file, "missing-global", "defaultGlobals references unknown global '" + globalId + "'");
+            }
+        }
+        for (String skillId : orEmpty(pack.defaultSkills)) {
+            if (!index.exists("skills/" + skillId + ".skill.md")
+                    && lineage.stream().noneMatch(p -> index.exists("packs/" + p.id + "/skills/" + skillId + ".skill.md"))) {
+                error(file, "missing-skill", "defaultSkills references unknown skill '" + skillId + "'");
+            }
+        }
+        if (pack.defaultMcpToolset != null && catalog().findToolset(pack.defaultMcpToolset) == null) {
+            error(file, "missing-toolset", "defaultMcpToolset references unknown toolset '" + pack.defaultMcpToolset + "'");
+        }
+        for (String pathRule : orEmpty(pack.pathRules)) {
+            String ruleId = "packs/" + dirName + "/" + pathRule;
+            Path ruleFile = index.resolve(ruleId);
+            if (ruleFile == null) {
+                error(file, "missing-path-rule", "pathRules entry '" + pathRule + "' does not exist");
+                continue;
+            }
+            try {
+                Map<String, Object> frontmatter = Frontmatter.read(ruleFile);
+                if (Frontmatter.strings(frontmatter, "applyTo").stream().allMatch(String::isBlank)) {
+                    error(ContextIndex.normalizeId(ruleId), "frontmatter", "path rule has no applyTo glob");
+                }
+            } catch (IOException e) {
+                error(ContextIndex.normalizeId(ruleId), "frontmatter", "invalid frontmatter: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ids of packs that some pack lists under extends. Computed once.
+     */
+    private synchronized Set<String> extendedPacks() {
+        if (extendedPacks == null) {
+            extendedPacks = new HashSet<>();
+            for (String id : index.ids()) {
+                Matcher pack = PACK_YAML.matcher(id);
+                if (!pack.matches()) continue;
+                try {
+                    PackModel model = index.pack(pack.group(1));
+                    if (model != null) extendedPacks.addAll(orEmpty(model.extendsPacks));
+                } catch (IOException e) {
+                    // Reported by that pack's own check
+                }
+            }
+        }
+        return extendedPacks;
+    }
+
+    private void checkSkill(String file, String fileStem) {
+        Map<String, Object> frontmatter;
+        try {
+            frontmatter = Frontmatter.read(index.resolve(file));
+        } catch (IOException e) {
+            error(file, "frontmatter", "invalid frontmatter: " + e.getMessage());
+            return;
+        }
+        if (frontmatter == null) {
+            error(file, "frontmatter", "missing frontmatter block");
+            return;
+        }
+        for (String key : List.of("id", "description", "whenToUse")) {
+            String value = Frontmatter.string(frontmatter, key);
+            if (value == null || value.isBlank()) {
+                error(file, "frontmatter", "missing required key '" + key + "'");
+            }
+        }
+        String id = Frontmatter.string(frontmatter, "id");
+        if (id != null && !id.equals(fileStem)) {
+            error(file, "skill-id", "id '" + id + "' does not match file name '" + fileStem + ".skill.md'");
+        }
+        Object signals = frontmatter.get("signals");
+        if (signals != null && !(signals instanceof List)) {
+            error(file, "frontmatter", "'signals' must be a list");
+        }
+        skillFiles.computeIfAbsent(fileStem, k -> ConcurrentHashMap.newKeySet()).add(file);
+    }
+
+    private void checkGlobal(String file) {
+        try {
+            if (Files.readString(index.resolve(file)).isBlank()) {
+                warning(file, "empty", "global rule file is empty");
+            }
+        } catch (IOException e) {
+            error(file, "read", e.getMessage());
+        }
+    }
+
+    private void checkCatalog(Path catalogPath) {
+        String file = catalogPath.toString();
+        McpCatalog catalog;
+        try {
+            catalog = McpCatalog.load(catalogPath);
+        } catch (IOException e) {
+            error(file, "parse", e.getMessage());
+            return;
+        }
+        Set<String> serverNames = new HashSet<>();
+        for (McpCatalog.McpServer server : orEmpty(catalog.servers)) {
+            if (server.name == null || server.name.isBlank()) {
+                error(file, "server", "server without a name");
+                continue;
+            }
+            if (!serverNames.add(server.name)) {
+                error(file, "duplicate-id", "server '" + server.name + "' is defined more than once");
+            }
+            if ("stdio".equals(server.type)) {
+                if (server.command == null || server.command.isBlank()) {
+                    error(file, "server", "stdio server '" + server.name + "' has no command");
+                }
+            } else if (server.url == null || server.url.isBlank()) {
+                warning(file, "server", "remote server '" + server.name + "' has no url");
+            }
+        }
+        Set<String> toolsetNames = new HashSet<>();
+        McpCatalog merged = catalog();
+        for (McpCatalog.McpToolset toolset : orEmpty(catalog.toolsets)) {
+            if (!toolsetNames.add(toolset.name)) {
+                error(file, "duplicate-id", "toolset '" + toolset.name + "' is defined more than once");
+            }
+            for (String serverName : orEmpty(toolset.servers)) {
+                if (merged.findServer(serverName) == null) {
+                    error(file, "missing-server", "toolset '" + toolset.name + "' references unknown server '" + serverName + "'");
+                }
+            }
+        }
+    }
+
+    // ── Configs ──────────────────────────────────────────────────────────────
+
+    private void checkConfig(String file, ContextModel ctx) {
+        if (ctx.schemaVersion < 1 || ctx.schemaVersion > aictx.SCHEMA_VERSION) {
+            error(file, "schema-version", "unsupported schemaVersion " + ctx.schemaVersion
+                    + " (supported: 1.." + aictx.SCHEMA_VERSION + ")");
+        }
+        if (!"config".equals(ctx.outputs.layout) && !ctx.outputs.stableLayout()) {
+            error(file, "layout", "unknown outputs.layout '" + ctx.outputs.layout + "' (expected: config, stable)");
+        }
+        if (!"static".equals(ctx.selection.mode) && !ctx.selection.isAuto()) {
+            error(file, "selection", "unknown selection.mode '" + ctx.selection.mode + "' (expected: static, auto)");
+        }
+        List<PackModel> packs = new ArrayList<>();
+        for (String packId : ctx.packs) {
+            Path packYaml = index.resolve("packs/" + packId + "/pack.yaml");
+            if (packYaml == null) {
+                error(file, "missing-pack", "unknown pack '" + packId + "'");
+                continue;
+            }
+            try {
+                packs.add(PackModel.load(packYaml));
+            } catch (IOException e) {
+                error(file, "missing-pack", "pack '" + packId + "' cannot be parsed: " + e.getMessage());
+            }
+        }
+        if (ctx.repoType != null && !packs.isEmpty()
+                && packs.stream().noneMatch(p -> orEmpty(p.appliesToRepoTypes).contains(ctx.repoType))) {
+            warning(file, "repo-type", "no selected pack applies to repoType '" + ctx.repoType + "'");
+        }
+        for (String globalId : ctx.globals) {
+            if (!index.exists("globals/" + globalId + ".md")) {
+                error(file, "missing-global", "unknown global '" + globalId + "'");
+            }
+        }
+        // Skills and path rules also come from the packs the selected packs extend
+        List<PackModel> closure = packs;
+        try {
+            closure = PackGraph.closure(index, ctx.packs).packs;
+        } catch (IOException e) {
+            // Reported by the library checks of the parent pack
+        }
+        for (String skillId : ctx.skills) {
+            boolean found = index.exists("skills/" + skillId + ".skill.md")
+                    || closure.stream().anyMatch(p -> index.exists("packs/" + p.id + "/skills/" + skillId + ".skill.md"));
+            if (!found) {
+                error(file, "missing-skill", "unknown skill '" + skillId + "' (not global and not in a selected pack)");
+            }
+        }
+        Set<String> pathRuleIds = new HashSet<>();
+        closure.forEach(p -> orEmpty(p.pathRules).forEach(r -> pathRuleIds.add(PackModel.pathRuleId(r))));
+        for (String pathRule : ctx.pathRules) {
+            if (!pathRuleIds.contains(pathRule.startsWith("!") ? pathRule.substring(1) : pathRule)) {
+                error(file, "missing-path-rule", "pathRules entry '" + pathRule + "' is not provided by a selected pack");
+            }
+        }
+        McpCatalog catalog = catalog();
+        if (ctx.mcp.toolset != null && catalog.findToolset(ctx.mcp.toolset) == null) {
+            error(file, "missing-toolset", "unknown MCP toolset '" + ctx.mcp.toolset + "'");
+        }
+        for (String server : ctx.mcp.servers) {
+            if (catalog.findServer(server) == null) {
+                error(file, "missing-server", "unknown MCP server '" + server + "'");
+            }
+        }
+    }
+
+    // ── Helpers ──────────────────────────────────────────────────────────────
+
+    private McpCatalog catalog() {
+        try {
+            return index.catalog();
+        } catch (IOException e) {
+            error(ContextIndex.CATALOG_ID, "parse", e.getMessage());
+            return new McpCatalog();
+        }
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list != null ? list : List.of();
+    }
+
+    private void error(String file, String code, String message) {
+        diagnostics.add(new Diagnostic(Severity.ERROR, file, code, message));
+    }
+
+    private void warning(String file, String code, String message) {
+        diagnostics.add(new Diagnostic(Severity.WARNING, file, code, message));
+    }
+}
@@ -1,13 +1,7 @@
 import java.io.*;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.*;
 import java.util.*;
 import java.util.regex.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 public class VersionUtil {
 
@@ -22,7 +16,7 @@ public class VersionUtil {
      * Resolve the context root using multiple strategies:
      * 1. AICTX_CONTEXT_ROOT env var (explicit override)
      * 2. ./context relative to CWD (local development from repo root)
-     * 3. ~/.aictx/context/ cache (auto-downloaded from GitHub)
+     * 3. ~/.aictx cache (auto-downloaded from GitHub, see ContextCache)
      */
     public static Path resolveContextRoot() {
         // Strategy 1: AICTX_CONTEXT_ROOT env var (for development / explicit override)
@@ -38,93 +32,58 @@ public class VersionUtil {
             return localContext.toAbsolutePath();
         }
 
-        // Strategy 3: cached context at ~/.aictx/context/
-        Path cachedContext = getContextCacheDir();
-        if (isValidContextDir(cachedContext)) {
-            return cachedContext;
-        }
-
-        // Strategy 4: auto-download from GitHub
-        try {
-            System.out.println("Context library not found locally. Downloading from GitHub...");
-            downloadContext(cachedContext);
-            if (isValidContextDir(cachedContext)) {
-                System.out.println("Context library cached at " + cachedContext);
-                return cachedContext;
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to download context library: " + e.getMessage());
-        }
-
-        return null;
+        // Strategy 3: cached context in ~/.aictx (downloaded on first use, then revalidated in the background)
+        return ContextCache.fromEnvironment().resolve();
     }
 
-    static boolean isValidContextDir(Path dir) {
-        return Files.isDirectory(dir) && Files.exists(dir.resolve("globals"));
+    /**
+     * Build the ordered list of context layers on top of the base library:
+     * 1. base (from resolveContextRoot)
+     * 2. AICTX_CONTEXT_LAYERS env var entries (path-separator delimited, e.g. org then team)
+     * 3. contextLayers declared in aictx-context.yaml (e.g. repo-local overrides)
+     * Later layers override earlier ones per file. Layers that are not directories are
+     * skipped with a warning on stderr.
+     */
+    public static List<Path> resolveContextLayers(Path base, List<String> configLayers) {
+        return resolveContextLayers(base, configLayers, null);
     }
 
     /**
-     * Download the context directory from the GitHub repo archive and extract it to targetDir.
+     * Like {@link #resolveContextLayers(Path, List)}, but adds the entries of layers that are
+     * not directories to missing instead of printing them, if missing is not null.
      */
-    public static void downloadContext(Path targetDir) throws Exception {
-        String url = "https://github.com/" + GITHUB_REPO + "/archive/refs/heads/" + GITHUB_BRANCH + ".zip";
-
-        HttpClient client = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.NORMAL)
-                .build();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .build();
-        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
-
-        if (response.statusCode() != 200) {
-            throw new IOException("HTTP " + response.statusCode() + " fetching context library from " + url);
-        }
-
-        // Clean target dir if it exists (for updates)
-        if (Files.isDirectory(targetDir)) {
-            try (var walk = Files.walk(targetDir)) {
-                walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    public static List<Path> resolveContextLayers(Path base, List<String> configLayers, List<String> missing) {
+        List<Path> layers = new ArrayList<>();
+        layers.add(base.toAbsolutePath().normalize());
+        String envLayers = System.getenv("AICTX_CONTEXT_LAYERS");
+        if (envLayers != null) {
+            for (String entry : envLayers.split(File.pathSeparator)) {
+                addLayer(layers, entry, missing);
             }
         }
-        Files.createDirectories(targetDir);
-
-        try (ZipInputStream zis = new ZipInputStream(response.body())) {
-            ZipEntry entry;
-            String contextPrefix = null;
-
-            while ((entry = zis.getNextEntry()) != null) {
-                String name = entry.getName();
-
-                // Detect the context/ prefix from the archive (e.g., "aictx-cli-main/context/")
-                if (contextPrefix == null) {
-                    int slash = name.indexOf('/');
-                    if (slash > 0) {
-                        contextPrefix = name.substring(0, slash + 1) + "context/";
-                    }
-                }
-
-                if (contextPrefix == null || !name.startsWith(contextPrefix)) {
-                    zis.closeEntry();
-                    continue;
-                }
-
-                String relativePath = name.substring(contextPrefix.length());
-                if (relativePath.isEmpty()) {
-                    zis.closeEntry();
-                    continue;
-                }
+        for (String entry : configLayers) {
+            addLayer(layers, entry, missing);
+        }
+        return layers;
+    }
 
-                Path outPath = targetDir.resolve(relativePath);
-                if (entry.isDirectory()) {
-                    Files.createDirectories(outPath);
-                } else {
-                    Files.createDirectories(outPath.getParent());
-                    Files.copy(zis, outPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-                zis.closeEntry();
+    private static void addLayer(List<Path> layers, String entry, List<String> missing) {
+        if (entry.isBlank()) return;
+        Path layer = Path.of(entry.trim()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(layer)) {
+            if (missing != null) {
+                missing.add(entry);
+            } else {
+                System.err.println("Warning: context layer not found: " + entry);
             }
+            return;
         }
+        layers.remove(layer);
+        layers.add(layer);
+    }
+
+    static boolean isValidContextDir(Path dir) {
+        return Files.isDirectory(dir) && Files.exists(dir.resolve("globals"));
     }
 
     /**